@@ -2,27 +2,41 @@ package com.bashpile;
 
 import com.bashpile.engine.BashTranslationEngine;
 import com.bashpile.engine.BashpileVisitor;
+import com.bashpile.engine.StatementCache;
 import com.bashpile.engine.Translation;
+import com.bashpile.engine.TranslationEngine;
+import com.bashpile.engine.TranslationOptions;
 import com.bashpile.exceptions.BashpileUncheckedException;
+import org.antlr.v4.runtime.ANTLRErrorListener;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CharStreams;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ConsoleErrorListener;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.IntStream;
 import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.atn.DecisionInfo;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.bashpile.engine.BashTranslationEngine.TAB;
 import static com.bashpile.engine.Translation.toParagraphTranslation;
 
 /** Has the Antlr parser and a lot of helper methods to BashTranslationEngine */
@@ -38,100 +52,250 @@ public class AntlrUtils {
      */
     public static @Nonnull String parse(
             @Nonnull final String origin, @Nonnull final InputStream is) throws IOException {
-        LOG.trace("Starting parse");
-        // lexer
-        final CharStream input = CharStreams.fromStream(is);
-        final BashpileLexer lexer = new BashpileLexer(input);
-        final CommonTokenStream tokens = new CommonTokenStream(lexer);
+        return parse(origin, is, TranslationOptions.DEFAULT);
+    }
 
-        // parser
-        final BashpileParser parser = new BashpileParser(tokens);
-        final ParseTree tree = parser.program();
+    /**
+     * These are the core antlr calls to run the lexer, parser, visitor and translation engine.
+     *
+     * @param origin The filename (if a file) or text (if just script lines) of the <code>is</code>.
+     * @param is The input stream holding the Bashpile that we parse.
+     * @param options Settings for the translation engine.
+     */
+    public static @Nonnull String parse(
+            @Nonnull final String origin,
+            @Nonnull final InputStream is,
+            @Nonnull final TranslationOptions options) throws IOException {
+        return parse(origin, is, options, null);
+    }
 
-        return transpile(origin, tree);
+    /**
+     * These are the core antlr calls to run the lexer, parser, visitor and translation engine.
+     *
+     * @param origin The filename (if a file) or text (if just script lines) of the <code>is</code>.
+     * @param is The input stream holding the Bashpile that we parse.
+     * @param options Settings for the translation engine.
+     * @param statementCache The statements from the last translation of this file, or null to translate them all.
+     */
+    public static @Nonnull String parse(
+            @Nonnull final String origin,
+            @Nonnull final InputStream is,
+            @Nonnull final TranslationOptions options,
+            @Nullable final StatementCache statementCache) throws IOException {
+        return parse(origin, CharStreams.fromStream(is), options, statementCache, null);
     }
 
-    /** Returns bash text block */
-    private static @Nonnull String transpile(@Nonnull final String origin, @Nonnull final ParseTree tree) {
-        // visitor and engine linked in visitor constructor
-        final BashpileVisitor bashpileLogic = new BashpileVisitor(new BashTranslationEngine(origin));
-        return bashpileLogic.visit(tree).body();
+    /**
+     * Like {@link #parse(String, InputStream, TranslationOptions, StatementCache)} but lexes input from its current
+     * index, e.g. {@link #readSource(Path)}, and also times each stage.
+     *
+     * @param stats Gets the timings and sizes, or null to not collect them.
+     */
+    public static @Nonnull String parse(
+            @Nonnull final String origin,
+            @Nonnull final CharStream input,
+            @Nonnull final TranslationOptions options,
+            @Nullable final StatementCache statementCache,
+            @Nullable final CompileStats stats) {
+        return translate(origin, input, options, statementCache, null, stats).body();
     }
 
     /**
-     * Helper to {@link BashTranslationEngine#functionForwardDeclarationStatement(BashpileParser.FunctionForwardDeclarationStatementContext)}
+     * Like {@link #parse(String, CharStream, TranslationOptions, StatementCache, CompileStats)} but writes the
+     * translation to out a top-level statement at a time, instead of building it all as one String.
+     *
+     * @param out Where the translation is written.  Not flushed or closed.
      */
-    public static @Nonnull ParserRuleContext getFunctionDeclCtx(
-            @Nonnull final BashpileVisitor visitor,
-            @Nonnull final BashpileParser.FunctionForwardDeclarationStatementContext ctx) {
-        final String functionName = ctx.typedId().Id().getText();
-        assert visitor.getContextRoot() != null;
-        final Stream<ParserRuleContext> allContexts = stream(visitor.getContextRoot());
-        final Predicate<ParserRuleContext> namesMatch =
-                context -> {
-                    final boolean isDeclaration = context instanceof BashpileParser.FunctionDeclarationStatementContext;
-                    // is a function declaration and the names match
-                    if (!isDeclaration) {
-                        return false;
-                    }
-                    final BashpileParser.FunctionDeclarationStatementContext decl =
-                            (BashpileParser.FunctionDeclarationStatementContext) context;
-                    final boolean nameMatches = decl.typedId().Id().getText().equals(functionName);
-                    return nameMatches && paramsMatch(decl.paramaters(), ctx.paramaters());
-                };
-        return allContexts
-                .filter(namesMatch)
-                .findFirst()
-                .orElseThrow(
-                        () -> new BashpileUncheckedException("No matching function declaration for " + functionName));
+    public static void parse(
+            @Nonnull final String origin,
+            @Nonnull final CharStream input,
+            @Nonnull final TranslationOptions options,
+            @Nullable final StatementCache statementCache,
+            @Nonnull final Writer out,
+            @Nullable final CompileStats stats) {
+        translate(origin, input, options, statementCache, out, stats);
+    }
+
+    /**
+     * Reads a Bashpile file with a single copy, into the code points of the returned stream.  A shebang line is
+     * skipped, see {@link #skipShebang(CharStream)}.
+     */
+    public static @Nonnull CharStream readSource(@Nonnull final Path file) throws IOException {
+        return skipShebang(CharStreams.fromPath(file, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Skips a shebang line by starting the stream at its line break, so the line numbers of tokens still match the
+     * source.  Every source goes through here, so the command line and {@link BashpileCompiler} report the same lines.
+     *
+     * @param input The Bashpile, at its start.
+     * @return input, after any shebang line.
+     */
+    public static @Nonnull CharStream skipShebang(@Nonnull final CharStream input) {
+        if (input.LA(1) == '#' && input.LA(2) == '!') {
+            while (input.LA(1) != '\n' && input.LA(1) != IntStream.EOF) {
+                input.consume();
+            }
+        }
+        return input;
     }
 
-    private static boolean paramsMatch(
-            @Nonnull final BashpileParser.ParamatersContext left,
-            @Nonnull final BashpileParser.ParamatersContext right) {
-        // create a stream of ids and a list of ids
-        final Stream<String> leftStream = left.typedId().stream()
-                .map(BashpileParser.TypedIdContext::Id).map(ParseTree::getText);
-        final List<String> rightList = right.typedId().stream()
-                .map(BashpileParser.TypedIdContext::Id).map(ParseTree::getText).toList();
+    /** Runs the lexer, the parser and a visitor linked to a new translation engine */
+    private static @Nonnull Translation translate(
+            @Nonnull final String origin,
+            @Nonnull final CharStream input,
+            @Nonnull final TranslationOptions options,
+            @Nullable final StatementCache statementCache,
+            @Nullable final Writer out,
+            @Nullable final CompileStats stats) {
+        // visitor and engine linked in visitor constructor
+        final TranslationEngine engine = new BashTranslationEngine(origin, options);
+        final BashpileVisitor visitor = new BashpileVisitor(engine, statementCache, out);
+        if (stats == null) {
+            LOG.trace("Starting parse");
+            return visitor.visit(parseProgram(new CommonTokenStream(new BashpileLexer(input))));
+        }
 
-        // match each left id to the corresponding right id, record the mismatches
-        final AtomicInteger i = new AtomicInteger(0);
-        final Stream<String> mismatches = leftStream.filter(str -> !str.equals(rightList.get(i.getAndIncrement())));
+        // lex everything first so the lexer and the parser can be timed separately
+        final long start = System.nanoTime();
+        final CommonTokenStream tokens = new CommonTokenStream(new BashpileLexer(input));
+        tokens.fill();
+        final long lexed = System.nanoTime();
+        final ParseTree tree = parseProgram(tokens);
+        final long parsed = System.nanoTime();
+        final Translation ret = visitor.visit(tree);
+        stats.recordLex(lexed - start, tokens.size());
+        stats.recordParse(parsed - lexed, countNodes(tree));
+        stats.recordTranslation(System.nanoTime() - parsed, engine.getState().subshellWorkaroundCounter());
+        return ret;
+    }
 
-        // params match if we can't find any mismatches
-        return mismatches.findFirst().isEmpty();
+    /**
+     * Parses in two stages.  The fast SLL prediction mode is tried first with error reporting off.  If that
+     * fails we rewind and reparse with full LL prediction and the default error handling, so syntax errors are
+     * reported exactly as a plain LL parse would.  SLL only fails on syntax errors or on rare ambiguities.
+     * Syntax errors go to the console.
+     * <br>
+     * {@code ParserBenchmark} measured the two stages as about a quarter faster than a plain LL parse for programs of
+     * a hundred to a thousand lines (0.38 against 0.50 ms at a thousand lines).  At ten thousand lines they are even.
+     *
+     * @param tokens The lexed Bashpile, positioned at the start.
+     * @return The parse tree of the program.
+     */
+    public static @Nonnull ParseTree parseProgram(@Nonnull final CommonTokenStream tokens) {
+        return parseProgram(tokens, ConsoleErrorListener.INSTANCE);
     }
 
     /**
-     * Lazy DFS.
-     * Helper to {@link #getFunctionDeclCtx(BashpileVisitor, BashpileParser.FunctionForwardDeclarationStatementContext)}
+     * Like {@link #parseProgram(CommonTokenStream)} but reports syntax errors to errorListener.
      *
-     * @see <a href="https://stackoverflow.com/questions/26158082/how-to-convert-a-tree-structure-to-a-stream-of-nodes-in-java">Stack Overflow</a>
-     * @param parentNode the root.
-     * @return Flattened stream of parent nodes' rule context children.
+     * @param tokens The lexed Bashpile, positioned at the start.
+     * @param errorListener Gets the syntax errors of the LL parse.
+     * @return The parse tree of the program.
      */
-    private static @Nonnull Stream<ParserRuleContext> stream(@Nonnull final ParserRuleContext parentNode) {
-        if (parentNode.getChildCount() == 0) {
-            return Stream.of(parentNode);
-        } else {
-            final Stream<ParserRuleContext> children = parentNode.getRuleContexts(ParserRuleContext.class).stream();
-            return Stream.concat(Stream.of(parentNode), children.flatMap(AntlrUtils::stream));
+    public static @Nonnull ParseTree parseProgram(
+            @Nonnull final CommonTokenStream tokens, @Nonnull final ANTLRErrorListener errorListener) {
+        final BashpileParser parser = new BashpileParser(tokens);
+        parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+        parser.removeErrorListeners();
+        parser.setErrorHandler(new BailErrorStrategy());
+        try {
+            return parser.program();
+        } catch (ParseCancellationException e) {
+            LOG.debug("SLL parse failed, reparsing with LL");
+            tokens.seek(0);
+            parser.reset();
+            parser.addErrorListener(errorListener);
+            parser.setErrorHandler(new DefaultErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+            return parser.program();
         }
     }
 
+    /**
+     * Parses with Antlr's profiling simulator and reports each grammar decision that was used, most expensive first.
+     * Uses plain LL prediction so that SLL conflicts that fall back to full-context LL, and ambiguities, are counted.
+     *
+     * @param is The input stream holding the Bashpile that we parse.
+     * @return The report as a table, one line per decision.
+     */
+    public static @Nonnull String profileParser(@Nonnull final InputStream is) throws IOException {
+        return profileParser(CharStreams.fromStream(is));
+    }
+
+    /**
+     * Like {@link #profileParser(InputStream)} but lexes input from its current index.
+     *
+     * @param input The Bashpile that we parse.
+     * @return The report as a table, one line per decision.
+     */
+    public static @Nonnull String profileParser(@Nonnull final CharStream input) {
+        final CommonTokenStream tokens = new CommonTokenStream(new BashpileLexer(input));
+        tokens.fill();
+        final BashpileParser parser = new BashpileParser(tokens);
+        parser.setProfile(true);
+        final long start = System.nanoTime();
+        parser.program();
+        final long totalNanos = System.nanoTime() - start;
+
+        final StringBuilder report = new StringBuilder("Parsed %d tokens in %.3f ms%n".formatted(
+                tokens.size(), totalNanos / 1_000_000.0));
+        report.append("%-24s %8s %10s %10s %8s %8s %11s %10s %8s%n".formatted("rule", "decision", "invocations",
+                "time (ms)", "SLL max", "LL max", "LL fallback", "ambiguity", "errors"));
+        Arrays.stream(parser.getParseInfo().getDecisionInfo())
+                .filter(info -> info.invocations > 0)
+                .sorted(Comparator.comparingLong((DecisionInfo info) -> info.timeInPrediction).reversed())
+                .forEach(info -> report.append("%-24s %8d %10d %10.3f %8d %8d %11d %10d %8d%n".formatted(
+                        parser.getRuleNames()[parser.getATN().getDecisionState(info.decision).ruleIndex],
+                        info.decision,
+                        info.invocations,
+                        info.timeInPrediction / 1_000_000.0,
+                        info.SLL_MaxLook,
+                        info.LL_MaxLook,
+                        info.LL_Fallback,
+                        info.ambiguities.size(),
+                        info.errors.size())));
+        return report.toString();
+    }
+
+    /**
+     * Helper to {@link BashTranslationEngine#functionForwardDeclarationStatement(BashpileParser.FunctionForwardDeclarationStatementContext)}
+     */
+    public static @Nonnull ParserRuleContext getFunctionDeclCtx(
+            @Nonnull final BashpileVisitor visitor,
+            @Nonnull final BashpileParser.FunctionForwardDeclarationStatementContext ctx) {
+        final String functionName = ctx.typedId().Id().getText();
+        return visitor.getFunctionDeclarationIndex()
+                .find(functionName, ctx.paramaters())
+                .orElseThrow(
+                        () -> new BashpileUncheckedException("No matching function declaration for " + functionName));
+    }
+
     /** Visits all statements and indents the results */
     public static @Nonnull Translation visitBlock(
             @Nonnull final BashpileVisitor visitor, @Nonnull final Stream<ParserRuleContext> statementStream) {
-        final String translationText = statementStream.map(visitor::visit)
+        return statementStream.map(visitor::visit)
                 .map(Translation::assertEmptyPreamble)
-                .map(Translation::body)
-                // bodies may be multiline strings, convert to single lines
-                .flatMap(str -> Arrays.stream(str.split("\n")))
-                // indent each line
-                .map(str -> "%s%s\n".formatted(TAB, str))
-                .collect(Collectors.joining());
-        return toParagraphTranslation(translationText);
+                // a statement that was left out isn't even an empty line
+                .filter(Translation::hasBody)
+                // the indent is applied when the translation is written out, once for all the nested blocks
+                .map(Translation::indentBody)
+                .reduce(toParagraphTranslation(""), Translation::add);
+    }
+
+    /** Counts the rules and tokens in the tree, without recursion */
+    private static int countNodes(@Nonnull final ParseTree root) {
+        int ret = 0;
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            ret++;
+            for (int i = 0; i < tree.getChildCount(); i++) {
+                stack.push(tree.getChild(i));
+            }
+        }
+        return ret;
     }
 
     /** Concatenates inputs into stream */
@@ -1,5 +1,6 @@
 package com.bashpile;
 
+import com.bashpile.cache.ShellcheckCache;
 import com.bashpile.engine.strongtypes.Type;
 import com.bashpile.exceptions.BashpileUncheckedAssertionException;
 import com.bashpile.exceptions.BashpileUncheckedException;
@@ -32,6 +33,8 @@ public class Asserts {
 
     private static final Pattern BLANK_LINE = Pattern.compile("(?m)^ *$");
 
+    private static final String SHELLCHECK_SEVERITY = "warning";
+
     /**
      * A text block is a group of text lines.  Each line ends with a newline.
      *
@@ -164,19 +167,60 @@ public class Asserts {
      * @return The translatedShellScript for chaining.
      */
     public static String assertNoShellcheckWarnings(@Nonnull final String translatedShellScript) {
-        final Path tempFile = Path.of("temp.bps");
+        return assertNoShellcheckWarnings(translatedShellScript, null);
+    }
+
+    /**
+     * Ensures that the shellcheck program can find no warnings.
+     *
+     * @param translatedShellScript The Bash script
+     * @param cache Verdicts from earlier runs, or null to always run shellcheck.
+     * @return The translatedShellScript for chaining.
+     */
+    public static String assertNoShellcheckWarnings(
+            @Nonnull final String translatedShellScript, @Nullable final ShellcheckCache cache) {
+        final ExecutionResults shellcheckResults = cache != null
+                ? cache.check(translatedShellScript, SHELLCHECK_SEVERITY, Asserts::runShellcheck)
+                : runShellcheck(translatedShellScript);
+        if (shellcheckResults.exitCode() != 0) {
+            throw new BashpileUncheckedAssertionException(shellcheckResults.stdout());
+        }
+        return translatedShellScript;
+    }
+
+    /**
+     * Ensures that the shellcheck program can find no warnings in a written script.
+     *
+     * @param translatedShellScriptFile The file holding the Bash script.
+     */
+    public static void assertNoShellcheckWarnings(@Nonnull final Path translatedShellScriptFile) {
+        final ExecutionResults shellcheckResults = runShellcheck(translatedShellScriptFile);
+        if (shellcheckResults.exitCode() != 0) {
+            throw new BashpileUncheckedAssertionException(shellcheckResults.stdout());
+        }
+    }
+
+    // helpers
+
+    /** Uses a unique temp file so that concurrent compiles don't overwrite each other's scripts */
+    private static @Nonnull ExecutionResults runShellcheck(@Nonnull final String translatedShellScript) {
+        final Path tempFile = asUnchecked(() -> Files.createTempFile("bashpile", ".bash"));
         try {
             Files.writeString(tempFile, translatedShellScript);
-            final ExecutionResults shellcheckResults =
-                    BashShell.runAndJoin("shellcheck --shell=bash --severity=warning " + tempFile);
-            if (shellcheckResults.exitCode() != 0) {
-                throw new BashpileUncheckedAssertionException(shellcheckResults.stdout());
-            }
-            return translatedShellScript;
+            return runShellcheck(tempFile);
         } catch (IOException e) {
             throw new BashpileUncheckedException(e);
         } finally {
             asUnchecked(() -> Files.deleteIfExists(tempFile));
         }
     }
+
+    private static @Nonnull ExecutionResults runShellcheck(@Nonnull final Path file) {
+        try {
+            return BashShell.runAndJoin(List.of(
+                    "shellcheck", "--shell=bash", "--severity=" + SHELLCHECK_SEVERITY, file.toString()));
+        } catch (IOException e) {
+            throw new BashpileUncheckedException(e);
+        }
+    }
 }
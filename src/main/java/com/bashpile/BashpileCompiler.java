@@ -0,0 +1,246 @@
+package com.bashpile;
+
+import com.bashpile.engine.BashTranslationEngine;
+import com.bashpile.engine.BashpileVisitor;
+import com.bashpile.engine.TranslationOptions;
+import com.bashpile.exceptions.BashpileUncheckedAssertionException;
+import com.bashpile.exceptions.BashpileUncheckedException;
+import com.bashpile.exceptions.UserError;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.apache.commons.io.IOUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiles Bashpile to Bash for Java programs that embed Bashpile.
+ * <br>
+ * Immutable and thread safe.  Each compilation gets its own lexer, parser, visitor and translation engine, so one
+ * instance can be reused and called from many threads at once.  Unlike {@link BashpileMain} nothing is printed or
+ * written to disk, and mistakes in the Bashpile are returned as {@link Diagnostic}s instead of thrown.
+ */
+public final class BashpileCompiler {
+
+    // statics
+
+    /** A compiler with {@link Options#DEFAULT} */
+    public static @Nonnull BashpileCompiler of() {
+        return of(Options.DEFAULT);
+    }
+
+    public static @Nonnull BashpileCompiler of(@Nonnull final Options options) {
+        return new BashpileCompiler(options);
+    }
+
+    // instance fields, constructors and methods
+
+    @Nonnull
+    private final Options options;
+
+    private BashpileCompiler(@Nonnull final Options options) {
+        this.options = options;
+    }
+
+    public @Nonnull Options options() {
+        return options;
+    }
+
+    /**
+     * Compiles Bashpile text.
+     *
+     * @param origin The filename or a description of the source, for the generated header and messages.
+     * @param source The Bashpile.
+     */
+    public @Nonnull CompileResult compile(@Nonnull final String origin, @Nonnull final CharSequence source) {
+        return compileSource(origin, CharStreams.fromString(source.toString(), origin));
+    }
+
+    /** Compiles a UTF-8 Bashpile file, using the path as the origin */
+    public @Nonnull CompileResult compile(@Nonnull final Path file) throws IOException {
+        return compileSource(file.toString(), AntlrUtils.readSource(file));
+    }
+
+    /**
+     * Compiles all of a reader's Bashpile.  The reader is not closed.
+     *
+     * @param origin The filename or a description of the source, for the generated header and messages.
+     * @param source The Bashpile.
+     */
+    public @Nonnull CompileResult compile(@Nonnull final String origin, @Nonnull final Reader source)
+            throws IOException {
+        return compile(origin, IOUtils.toString(source));
+    }
+
+    // helpers
+
+    /** Compiles source, skipping any shebang line like the command line does */
+    private @Nonnull CompileResult compileSource(@Nonnull final String origin, @Nonnull final CharStream source) {
+        final long start = System.nanoTime();
+        final List<Diagnostic> diagnostics = new ArrayList<>();
+
+        // lex and parse, collecting syntax errors instead of printing them
+        final BaseErrorListener syntaxErrors = new BaseErrorListener() {
+            @Override
+            public void syntaxError(
+                    final Recognizer<?, ?> recognizer,
+                    final Object offendingSymbol,
+                    final int line,
+                    final int charPositionInLine,
+                    final String msg,
+                    final RecognitionException e) {
+                diagnostics.add(new Diagnostic(Stage.SYNTAX, msg, line, charPositionInLine + 1));
+            }
+        };
+        final BashpileLexer lexer = new BashpileLexer(AntlrUtils.skipShebang(source));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(syntaxErrors);
+        final ParseTree tree = AntlrUtils.parseProgram(new CommonTokenStream(lexer), syntaxErrors);
+        final long parsed = System.nanoTime();
+        if (!diagnostics.isEmpty()) {
+            return new CompileResult(null, diagnostics, new Timings(start, parsed, parsed, parsed));
+        }
+
+        // translate
+        String bash;
+        try {
+            bash = new BashpileVisitor(new BashTranslationEngine(origin, options.translationOptions()))
+                    .visit(tree)
+                    .body();
+        } catch (UserError e) {
+            diagnostics.add(new Diagnostic(Stage.TRANSLATION, e.getMessage(), e.getLineNumber(), 0));
+            bash = null;
+        } catch (BashpileUncheckedException e) {
+            diagnostics.add(new Diagnostic(Stage.TRANSLATION, e.getMessage(), 0, 0));
+            bash = null;
+        }
+        final long translated = System.nanoTime();
+        if (bash == null || !options.shellcheck()) {
+            return new CompileResult(bash, diagnostics, new Timings(start, parsed, translated, translated));
+        }
+
+        // lint
+        try {
+            Asserts.assertNoShellcheckWarnings(bash);
+        } catch (BashpileUncheckedAssertionException e) {
+            diagnostics.add(new Diagnostic(Stage.SHELLCHECK, e.getMessage(), 0, 0));
+            bash = null;
+        }
+        return new CompileResult(bash, diagnostics, new Timings(start, parsed, translated, System.nanoTime()));
+    }
+
+    // nested types
+
+    /**
+     * How a {@link BashpileCompiler} compiles.  Immutable.
+     *
+     * @param deterministic When true the same input always compiles to the same text, e.g. no timestamp in the header.
+     * @param shellcheck When true the Bash is checked with ShellCheck, which must be on the PATH.
+     * @param bcCoprocess When true float calculations are sent to one <code>bc</code> started by the script, like
+     *                    <code>--bcCoprocess</code>.
+     * @param bufferOutput When true prints are collected and written out together, like <code>--bufferOutput</code>.
+     * @see TranslationOptions
+     */
+    public record Options(boolean deterministic, boolean shellcheck, boolean bcCoprocess, boolean bufferOutput) {
+
+        /** Checks with ShellCheck and includes a timestamp, like the command line */
+        public static final Options DEFAULT = new Options(false, true, false, false);
+
+        /** Replaces deterministic */
+        public @Nonnull Options deterministic(final boolean isDeterministic) {
+            return new Options(isDeterministic, shellcheck, bcCoprocess, bufferOutput);
+        }
+
+        /** Replaces shellcheck */
+        public @Nonnull Options shellcheck(final boolean runShellcheck) {
+            return new Options(deterministic, runShellcheck, bcCoprocess, bufferOutput);
+        }
+
+        /** Replaces bcCoprocess */
+        public @Nonnull Options bcCoprocess(final boolean useBcCoprocess) {
+            return new Options(deterministic, shellcheck, useBcCoprocess, bufferOutput);
+        }
+
+        /** Replaces bufferOutput */
+        public @Nonnull Options bufferOutput(final boolean useBuffer) {
+            return new Options(deterministic, shellcheck, bcCoprocess, useBuffer);
+        }
+
+        /** The options for the translation engine */
+        public @Nonnull TranslationOptions translationOptions() {
+            return new TranslationOptions(deterministic, bcCoprocess, bufferOutput);
+        }
+    }
+
+    /**
+     * What a compilation made.
+     *
+     * @param bash The Bash script, or null if there were errors.
+     * @param diagnostics The errors, in the order found.  Empty on success.
+     * @param timings How long each stage took.
+     */
+    public record CompileResult(
+            @Nullable String bash, @Nonnull List<Diagnostic> diagnostics, @Nonnull Timings timings) {
+
+        public CompileResult {
+            diagnostics = List.copyOf(diagnostics);
+        }
+
+        /** Did the Bashpile compile without errors? */
+        public boolean success() {
+            return bash != null;
+        }
+    }
+
+    /** The compilation stage that found a {@link Diagnostic} */
+    public enum Stage {
+        /** The lexer or parser, i.e. the Bashpile isn't valid */
+        SYNTAX,
+        /** The translation engine, e.g. a type mismatch */
+        TRANSLATION,
+        /** ShellCheck found a problem in the Bash */
+        SHELLCHECK
+    }
+
+    /**
+     * An error in the Bashpile, or found by ShellCheck in the Bash.
+     *
+     * @param stage What found it.
+     * @param message What is wrong.
+     * @param line The Bashpile line, or 0 if unknown.
+     * @param column The column on the line, starting at 1, or 0 if unknown.
+     */
+    public record Diagnostic(@Nonnull Stage stage, @Nonnull String message, int line, int column) {}
+
+    /**
+     * How long each stage of a compilation took.  Stages that didn't run took zero.
+     *
+     * @param parse Lexing and parsing.
+     * @param translate Translating the parse tree to Bash.
+     * @param shellcheck Running ShellCheck.
+     * @param total The whole compilation.
+     */
+    public record Timings(
+            @Nonnull Duration parse,
+            @Nonnull Duration translate,
+            @Nonnull Duration shellcheck,
+            @Nonnull Duration total) {
+
+        /** Creates the timings from the {@link System#nanoTime()} at the end of each stage */
+        /* package */ Timings(final long start, final long parsed, final long translated, final long end) {
+            this(Duration.ofNanos(parsed - start), Duration.ofNanos(translated - parsed),
+                    Duration.ofNanos(end - translated), Duration.ofNanos(end - start));
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.bashpile;
+
+import com.bashpile.engine.StatementCache;
+import com.bashpile.exceptions.BashpileUncheckedException;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import picocli.CommandLine;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.bashpile.AntlrUtils.parse;
+import static com.bashpile.exceptions.Exceptions.asUnchecked;
+
+/**
+ * Keeps a warm JVM, lexer and parser (including Antlr's shared DFA cache) resident and translates the requests sent
+ * over a UNIX domain socket.  Started with <code>bashpile --daemon</code>, see bin/bpclient for the client.
+ * <br>
+ * A request is the client's working directory, the number of command line arguments and then the arguments, each
+ * ended by a NUL byte.  So arguments may be empty or hold newlines.  The response is what the command line would have
+ * printed, then the exit code on the last line.
+ * <br>
+ * The socket is in a directory that only the user can use, as another user could otherwise answer the requests.
+ * <br>
+ * Each request is handled on its own thread.  Translations are incremental, the statements of each file that have
+ * not changed since the last request are not translated again.
+ */
+public class BashpileDaemon implements Closeable {
+
+    private static final Logger LOG = LogManager.getLogger(BashpileDaemon.class);
+
+    /** Loads the Antlr ATN and DFA caches and the translation engine classes before the first request */
+    private static final String WARM_UP_SCRIPT = """
+            function warmUp: float (x: float):
+                return x * 2.5
+            print(warmUp(1 + 1))
+            """;
+
+    /** Options for the daemon itself, which a client may not send */
+    private static final List<String> DAEMON_OPTIONS = List.of("--daemon", "--socket");
+
+    /** The most arguments in a request */
+    private static final int MAX_ARGUMENTS = 4096;
+
+    /** The most bytes in the working directory or an argument of a request */
+    private static final int MAX_FIELD_BYTES = 65536;
+
+    /** The most files whose statements are kept for incremental translation.  The least recently used go first. */
+    private static final int MAX_CACHED_FILES = 64;
+
+    /** Only the user may list the socket directory or create files in it */
+    private static final Set<PosixFilePermission> PRIVATE_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+
+    /** Only the user may connect to the socket */
+    private static final Set<PosixFilePermission> PRIVATE_SOCKET = PosixFilePermissions.fromString("rw-------");
+
+    /**
+     * Finds the socket that the daemon and bin/bpclient agree on.
+     *
+     * @return $BASHPILE_SOCKET, or bashpile.sock in a bashpile-$USER directory in $XDG_RUNTIME_DIR or /tmp.
+     */
+    public static @Nonnull Path defaultSocketPath() {
+        final String override = System.getenv("BASHPILE_SOCKET");
+        if (Strings.isNotBlank(override)) {
+            return Path.of(override);
+        }
+        final String runtimeDir = System.getenv("XDG_RUNTIME_DIR");
+        final String directory = Strings.isNotBlank(runtimeDir) ? runtimeDir : "/tmp";
+        return Path.of(directory, "bashpile-%s".formatted(System.getProperty("user.name")), "bashpile.sock");
+    }
+
+    @Nonnull
+    private final Path socketPath;
+
+    @Nonnull
+    private final ServerSocketChannel server;
+
+    @Nonnull
+    private final ExecutorService workers = Executors.newCachedThreadPool();
+
+    /** In access order, so the least recently translated file is dropped first */
+    @Nonnull
+    private final Map<Path, StatementCache> statementCaches = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Path, StatementCache> eldest) {
+                    return size() > MAX_CACHED_FILES;
+                }
+            });
+
+    /**
+     * Listens on <code>socketPath</code>.  Replaces a stale socket file but will not steal the socket from a running
+     * daemon.  Creates the directory of the socket for the user only, and refuses a directory that another user owns
+     * or may write to.
+     */
+    public static @Nonnull BashpileDaemon bind(@Nonnull final Path socketPath) throws IOException {
+        assertPrivateDirectory(socketPath.toAbsolutePath().getParent());
+        if (Files.exists(socketPath)) {
+            if (isListening(socketPath)) {
+                throw new BashpileUncheckedException("A Bashpile daemon is already listening on " + socketPath);
+            }
+            LOG.info("Removing stale socket {}", socketPath);
+            Files.delete(socketPath);
+        }
+        final ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socketPath));
+        Files.setPosixFilePermissions(socketPath, PRIVATE_SOCKET);
+        return new BashpileDaemon(socketPath, server);
+    }
+
+    private BashpileDaemon(@Nonnull final Path socketPath, @Nonnull final ServerSocketChannel server) {
+        this.socketPath = socketPath;
+        this.server = server;
+    }
+
+    /** Handles requests until {@link #close()} is called or the JVM shuts down */
+    public void serve() throws IOException {
+        final Thread cleanup = new Thread(this::close);
+        Runtime.getRuntime().addShutdownHook(cleanup);
+        warmUp();
+        LOG.info("Listening on {}", socketPath);
+        try {
+            while (server.isOpen()) {
+                try {
+                    final SocketChannel client = server.accept();
+                    workers.execute(() -> {
+                        try (client) {
+                            handle(client);
+                        } catch (IOException e) {
+                            LOG.warn("Could not close client connection", e);
+                        }
+                    });
+                } catch (ClosedChannelException e) {
+                    LOG.info("Stopped listening on {}", socketPath);
+                }
+            }
+        } finally {
+            close();
+            try {
+                Runtime.getRuntime().removeShutdownHook(cleanup);
+            } catch (IllegalStateException e) {
+                // the JVM is already shutting down and running our hook
+            }
+        }
+    }
+
+    /** Stops listening and removes the socket file.  Requests in progress are finished. */
+    @Override
+    public void close() {
+        IOUtils.closeQuietly(server);
+        workers.shutdown();
+        asUnchecked(() -> Files.deleteIfExists(socketPath));
+    }
+
+    // helpers
+
+    /** Creates directory for the user only if needed, and checks that no other user can put a socket in it */
+    private static void assertPrivateDirectory(@Nonnull final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PRIVATE_DIRECTORY));
+        }
+        final UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+        if (!Files.getOwner(directory).equals(user)) {
+            throw new BashpileUncheckedException(
+                    "The socket directory %s belongs to another user".formatted(directory));
+        }
+        final Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory);
+        if (permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            throw new BashpileUncheckedException(
+                    "Other users may write to the socket directory %s".formatted(directory));
+        }
+    }
+
+    private static boolean isListening(@Nonnull final Path socketPath) {
+        try (final SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void warmUp() throws IOException {
+        final long start = System.nanoTime();
+        parse("daemon warm up", IOUtils.toInputStream(WARM_UP_SCRIPT, StandardCharsets.UTF_8));
+        LOG.info("Warmed up in {} ms", (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** Reads the next field of a request, up to its NUL byte */
+    private static @Nonnull String readField(@Nonnull final InputStream in) throws IOException {
+        final ByteArrayOutputStream field = new ByteArrayOutputStream();
+        for (int b = in.read(); b != 0; b = in.read()) {
+            if (b < 0) {
+                throw new EOFException("The request ended in the middle of a field");
+            } else if (field.size() == MAX_FIELD_BYTES) {
+                throw new IOException("A field of the request is over %d bytes".formatted(MAX_FIELD_BYTES));
+            }
+            field.write(b);
+        }
+        return field.toString(StandardCharsets.UTF_8);
+    }
+
+    /** The first option among args that only the daemon itself may be started with */
+    private static @Nonnull Optional<String> findDaemonOption(@Nonnull final List<String> args) {
+        return args.stream()
+                .takeWhile(arg -> !arg.equals("--"))
+                .filter(arg -> DAEMON_OPTIONS.stream().anyMatch(
+                        option -> arg.equals(option) || arg.startsWith(option + "=")))
+                .findFirst();
+    }
+
+    private void handle(@Nonnull final SocketChannel client) {
+        final PrintWriter out = new PrintWriter(
+                new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8), true);
+        int exitCode;
+        try {
+            final InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+            final Path workingDirectory = Path.of(readField(in));
+            final int argumentCount = Integer.parseInt(readField(in));
+            if (argumentCount < 0 || argumentCount > MAX_ARGUMENTS) {
+                throw new IOException("Bad argument count %d".formatted(argumentCount));
+            }
+            final List<String> args = new ArrayList<>(argumentCount);
+            for (int i = 0; i < argumentCount; i++) {
+                args.add(readField(in));
+            }
+            LOG.info("Request from {} with arguments {}", workingDirectory, args);
+            final Optional<String> daemonOption = findDaemonOption(args);
+            if (daemonOption.isPresent()) {
+                out.println("%s is for starting a daemon, it can't be sent to one".formatted(daemonOption.get()));
+                out.println(CommandLine.ExitCode.USAGE);
+                return;
+            }
+
+            final BashpileMain bashpile = new BashpileMain();
+            bashpile.setWorkingDirectory(workingDirectory);
+            bashpile.setStatementCaches(statementCaches);
+            final CommandLine argProcessor = new CommandLine(bashpile);
+            bashpile.setPicocliCommandLine(argProcessor);
+            argProcessor.setOut(out);
+            argProcessor.setErr(out);
+            exitCode = argProcessor.execute(args.toArray(String[]::new));
+        } catch (Exception e) {
+            LOG.warn("Could not handle request", e);
+            out.println(e.getMessage());
+            exitCode = 1;
+        }
+        out.println(exitCode);
+    }
+}
@@ -1,8 +1,14 @@
 package com.bashpile;
 
+import com.bashpile.cache.CacheDirectory;
+import com.bashpile.cache.ShellcheckCache;
+import com.bashpile.cache.TranspileCache;
+import com.bashpile.engine.StatementCache;
+import com.bashpile.engine.TranslationOptions;
 import com.bashpile.exceptions.BashpileUncheckedException;
 import com.google.common.annotations.VisibleForTesting;
-import org.apache.commons.io.IOUtils;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -10,16 +16,31 @@ import picocli.CommandLine;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.Callable;
-import java.util.regex.Pattern;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static com.bashpile.AntlrUtils.parse;
+import static java.util.Objects.requireNonNullElse;
 
 /** Entry point into the program */
 @CommandLine.Command(
@@ -30,8 +51,6 @@ public class BashpileMain implements Callable<Integer> {
 
     // statics
 
-    private static final Pattern SHEBANG = Pattern.compile("^#!.*$");
-
     private static final Logger LOG = LogManager.getLogger(BashpileMain.class);
 
     /** Our main */
@@ -52,13 +71,84 @@ public class BashpileMain implements Callable<Integer> {
     @Nullable @SuppressWarnings("UnusedDeclaration")
     private Path outputFile;
 
-    @CommandLine.Parameters(arity = "1..1",
-            description = "Use the specified bashpile file.")
+    @CommandLine.Option(names = {"--daemon"},
+            description = "Stay running and translate files sent over a UNIX domain socket (see bin/bpclient).")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean daemon;
+
+    @CommandLine.Option(names = {"--socket"}, arity = "0..1",
+            description = "The UNIX domain socket for --daemon.  Defaults to $BASHPILE_SOCKET, then to "
+                    + "$XDG_RUNTIME_DIR/bashpile-$USER/bashpile.sock or /tmp/bashpile-$USER/bashpile.sock.")
+    @Nullable @SuppressWarnings("UnusedDeclaration")
+    private Path socket;
+
+    @CommandLine.Option(names = {"--deterministic"},
+            description = "Translate the same input to the same output, e.g. without a timestamp in the header.")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean deterministic;
+
+    @CommandLine.Option(names = {"--noShellcheck"},
+            description = "Don't check the translation with ShellCheck.  Translations aren't cached without it.")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean noShellcheck;
+
+    @CommandLine.Option(names = {"--bcCoprocess"},
+            description = "Send float calculations to one bc started by the generated script, instead of starting a bc "
+                    + "for each.  Faster for scripts with many calculations.")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean bcCoprocess;
+
+    @CommandLine.Option(names = {"--bufferOutput"},
+            description = "Collect the output of prints in a variable and write it out together, at the end of the "
+                    + "script or a block and before commands that may write.  Faster for scripts that print a lot.")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean bufferOutput;
+
+    @CommandLine.Option(names = {"--cache"},
+            description = "Reuse the output of an earlier translation of the same input.  Implies --deterministic.")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean cache;
+
+    @CommandLine.Option(names = {"--cacheDirectory"}, arity = "0..1",
+            description = "The directory for --cache.  Defaults to $XDG_CACHE_HOME/bashpile or ~/.cache/bashpile.")
+    @Nullable @SuppressWarnings("UnusedDeclaration")
+    private Path cacheDirectory;
+
+    @CommandLine.Option(names = {"--stats"}, arity = "1", paramLabel = "FORMAT",
+            description = "Print the timings and sizes of each translation to standard error.  FORMAT is json.")
+    @Nullable @SuppressWarnings("UnusedDeclaration")
+    private StatsFormat stats;
+
+    @CommandLine.Option(names = {"--profileParser", "--profile-parser"},
+            description = "Print how long each grammar decision took to parse the input instead of translating it.")
+    @SuppressWarnings("UnusedDeclaration")
+    private boolean profileParser;
+
+    @CommandLine.Option(names = {"-j", "--jobs"},
+            description = "How many files to translate at once when given several files or a directory.  "
+                    + "Defaults to the number of processors.")
+    @SuppressWarnings({"UnusedDeclaration", "FieldMayBeFinal"})
+    private int jobs = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Parameters(arity = "0..*",
+            description = "Use the specified bashpile files, or the .bps files in the specified directories.")
+    @Nullable @SuppressWarnings("UnusedDeclaration")
+    private List<Path> inputPaths;
+
+    /** The single file to translate.  Set from the command line or by the constructor. */
     @Nullable
     private Path inputFile;
 
     private CommandLine picocliCommandLine;
 
+    /** Relative paths are resolved against this.  Null for the JVM's working directory. */
+    @Nullable
+    private Path workingDirectory;
+
+    /** The statements of earlier translations, by absolute input path.  Null to translate every statement. */
+    @Nullable
+    private Map<Path, StatementCache> statementCaches;
+
     public BashpileMain() {}
 
     public BashpileMain(@Nullable final Path inputFile) {
@@ -74,64 +164,305 @@ public class BashpileMain implements Callable<Integer> {
         this.picocliCommandLine = picocliCommandLine;
     }
 
-    /** Saves transpiled input file to inputFile.bpt */
+    /**
+     * Sets the directory that relative input and output paths are resolved against.
+     * Used by the {@link BashpileDaemon} since its clients run in other directories.
+     */
+    public void setWorkingDirectory(@Nullable final Path workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+    /**
+     * Turns on incremental translation: only the statements that changed since a file was last translated with
+     * these caches are translated again.  Used by the {@link BashpileDaemon}.  Implies --deterministic.
+     *
+     * @param statementCaches Shared between translations, so must be thread safe.
+     */
+    public void setStatementCaches(@Nullable final Map<Path, StatementCache> statementCaches) {
+        this.statementCaches = statementCaches;
+    }
+
+    /** Saves transpiled input files to inputFile.bpt, or runs as a daemon */
     @Override
     public @Nonnull Integer call() throws IOException {
+        final PrintWriter out = picocliCommandLine.getOut();
+        if (daemon) {
+            final Path socketPath = socket != null ? socket : BashpileDaemon.defaultSocketPath();
+            try (final BashpileDaemon bashpileDaemon = BashpileDaemon.bind(socketPath)) {
+                bashpileDaemon.serve();
+            }
+            return 0;
+        }
+
+        if (inputPaths != null && (inputPaths.size() > 1 || Files.isDirectory(resolve(inputPaths.get(0))))) {
+            return compileBatch(out);
+        } else if (inputPaths != null) {
+            inputFile = inputPaths.get(0);
+        }
+
         final String filename = inputFile != null ? inputFile.toString() : "";
         if (Strings.isEmpty(filename)) {
-            System.out.println("Input file must be specified.");
-            picocliCommandLine.usage(System.out);
+            out.println("Input file must be specified.");
+            picocliCommandLine.usage(out);
             return 1;
         }
 
-        Path transpiledFilename;
-        if (outputFile != null) {
-            transpiledFilename = outputFile;
-        } else {
-            transpiledFilename = Path.of(filename + ".bpt");
-            if (Files.exists(transpiledFilename)) {
-                System.out.println(transpiledFilename + " already exists.  Will not overwrite.");
-                return 2;
-            }
+        if (profileParser) {
+            out.print(AntlrUtils.profileParser(getNameAndSource(inputFile).getRight()));
+            out.flush();
+            return 0;
         }
-        LOG.info("Transpiling {} to {}", filename, transpiledFilename);
-        final String bashScript = "#!/usr/bin/env bash\n\n" + transpile();
-        Files.writeString(transpiledFilename, bashScript);
+
+        final CompileStatus status = compile(inputFile, outputFile);
         // last line must be the filename we created
         LOG.info("Created file is:");
-        System.out.println(transpiledFilename);
-        return 0;
+        out.println(status.message());
+        out.flush();
+        return status.exitCode();
     }
 
     // helpers
 
+    /**
+     * Translates and lints the input, unless <code>--noShellcheck</code>.
+     * With <code>--cache</code> a translation of the same input, options and compiler build is reused instead.
+     */
     @VisibleForTesting
     public @Nonnull String transpile() throws IOException {
-        final Pair<String, InputStream> namedInputStream = getNameAndInputStream();
-        try (final InputStream inputStream = namedInputStream.getRight()) {
-            return Asserts.assertNoShellcheckWarnings(parse(namedInputStream.getLeft(), inputStream));
+        final boolean singleInputPath = inputFile == null && inputPaths != null && inputPaths.size() == 1;
+        return transpile(singleInputPath ? inputPaths.get(0) : inputFile);
+    }
+
+    /**
+     * Translates one file to inputFile.bpt or to outputFile.
+     * Does not write over an existing inputFile.bpt.
+     */
+    private @Nonnull CompileStatus compile(@Nonnull final Path inputFile, @Nullable final Path outputFile)
+            throws IOException {
+        Path transpiledFilename;
+        if (outputFile != null) {
+            transpiledFilename = outputFile;
+        } else {
+            transpiledFilename = Path.of(inputFile + ".bpt");
+            if (Files.exists(resolve(transpiledFilename))) {
+                return new CompileStatus(2, transpiledFilename + " already exists.  Will not overwrite.");
+            }
         }
+        LOG.info("Transpiling {} to {}", inputFile, transpiledFilename);
+        final CompileStats compileStats = stats != null ? new CompileStats(inputFile.toString()) : null;
+        // a symlinked output stays a symlink, we replace the file it points to
+        final Path requestedPath = resolve(transpiledFilename);
+        final Path outputPath = Files.exists(requestedPath) ? requestedPath.toRealPath() : requestedPath;
+        // written next to the output so the move is atomic, and the output is untouched if the translation fails
+        final Path tempPath = outputPath.resolveSibling(
+                ".%s.%s.tmp".formatted(outputPath.getFileName(), UUID.randomUUID()));
+        try {
+            // counts what reaches the file, below the buffer
+            final CountingWriter counter = new CountingWriter(new OutputStreamWriter(
+                    Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW), StandardCharsets.UTF_8));
+            long writtenWhileTranslating = 0;
+            try (final Writer writer = new BufferedWriter(counter)) {
+                writer.write("#!/usr/bin/env bash\n\n");
+                if (cache) {
+                    writer.write(transpile(inputFile, compileStats));
+                } else {
+                    // streamed, so we never hold the whole script
+                    transpile(inputFile, writer, compileStats);
+                    writtenWhileTranslating = counter.nanos();
+                }
+            }
+            final long written = System.nanoTime();
+            if (!cache && !noShellcheck) {
+                Asserts.assertNoShellcheckWarnings(tempPath);
+            }
+            final long checked = System.nanoTime();
+            final long bashBytes = Files.size(tempPath);
+
+            // leave the modification time alone when nothing changed, e.g. for make
+            if (Files.exists(outputPath) && Files.mismatch(outputPath, tempPath) == -1) {
+                LOG.info("{} is unchanged", transpiledFilename);
+            } else {
+                final boolean posix = outputPath.getFileSystem().supportedFileAttributeViews().contains("posix");
+                if (posix && Files.exists(outputPath)) {
+                    // keep e.g. the execute permission of an overwritten script
+                    Files.setPosixFilePermissions(tempPath, Files.getPosixFilePermissions(outputPath));
+                }
+                Files.move(tempPath, outputPath,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            if (compileStats != null) {
+                compileStats.recordWriteDuringTranslation(writtenWhileTranslating);
+                compileStats.recordWrite(counter.nanos() - writtenWhileTranslating + System.nanoTime() - checked);
+                compileStats.recordShellcheck(checked - written);
+                compileStats.recordBash(bashBytes, counter.lines());
+                final PrintWriter err = picocliCommandLine.getErr();
+                err.println(compileStats.toJson());
+                err.flush();
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return new CompileStatus(0, transpiledFilename.toString());
     }
 
-    private @Nonnull Pair<String, InputStream> getNameAndInputStream() throws IOException {
-        if (inputFile != null) {
-            final List<String> lines = Files.readAllLines(findFile(inputFile));
-            InputStream is;
-            if (SHEBANG.matcher(lines.get(0)).matches()) {
-                final String removedShebang = String.join("\n", lines.subList(1, lines.size()));
-                LOG.debug("Removed shebang to get:\n" + removedShebang);
-                is = IOUtils.toInputStream(removedShebang, StandardCharsets.UTF_8);
+    /**
+     * Translates every input file, and every .bps file under the input directories, on {@link #jobs} threads.
+     * Prints a line per file and then a summary.
+     *
+     * @return The worst exit code of the files.
+     */
+    private int compileBatch(@Nonnull final PrintWriter out) throws IOException {
+        Objects.requireNonNull(inputPaths);
+        if (outputFile != null) {
+            out.println("--outputFile can only be used with a single input file.");
+            return 1;
+        }
+        if (profileParser) {
+            out.println("--profileParser can only be used with a single input file.");
+            return 1;
+        }
+
+        final List<Path> files = new ArrayList<>();
+        for (final Path inputPath : inputPaths) {
+            if (Files.isDirectory(resolve(inputPath))) {
+                try (final Stream<Path> walk = Files.walk(resolve(inputPath))) {
+                    walk.filter(Files::isRegularFile)
+                            .filter(path -> path.getFileName().toString().endsWith(".bps"))
+                            .sorted()
+                            .map(path -> inputPath.resolve(resolve(inputPath).relativize(path)))
+                            .forEach(files::add);
+                }
             } else {
-                is = Files.newInputStream(inputFile);
+                files.add(inputPath);
+            }
+        }
+        LOG.info("Transpiling {} files on {} threads", files.size(), jobs);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+        final List<Future<CompileStatus>> futures = new ArrayList<>(files.size());
+        try {
+            for (final Path file : files) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        return compile(file, null);
+                    } catch (Exception e) {
+                        LOG.warn("Could not transpile {}", file, e);
+                        return new CompileStatus(1, requireNonNullElse(e.getMessage(), e.toString()));
+                    }
+                }));
+            }
+
+            int exitCode = 0;
+            int failures = 0;
+            for (int i = 0; i < files.size(); i++) {
+                final CompileStatus status = futures.get(i).get();
+                out.println("%s: %s".formatted(files.get(i), status.message()));
+                exitCode = Math.max(exitCode, status.exitCode());
+                failures += status.exitCode() != 0 ? 1 : 0;
+            }
+            out.println("Transpiled %d of %d files, %d failed.".formatted(
+                    files.size() - failures, files.size(), failures));
+            out.flush();
+            return exitCode;
+        } catch (InterruptedException | ExecutionException e) {
+            throw new BashpileUncheckedException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Translates without linting or caching, writing a top-level statement at a time to out */
+    private void transpile(
+            @Nonnull final Path inputFile, @Nonnull final Writer out, @Nullable final CompileStats compileStats)
+            throws IOException {
+        final Pair<String, CharStream> namedSource = getNameAndSource(inputFile);
+        parse(namedSource.getLeft(), namedSource.getRight(), getTranslationOptions(), getStatementCache(inputFile), out,
+                compileStats);
+    }
+
+    private @Nonnull String transpile(@Nullable final Path inputFile) throws IOException {
+        return transpile(inputFile, null);
+    }
+
+    /** Translates and lints, or gets the translation from the cache */
+    private @Nonnull String transpile(@Nullable final Path inputFile, @Nullable final CompileStats compileStats)
+            throws IOException {
+        final Pair<String, CharStream> namedSource = getNameAndSource(inputFile);
+        final String origin = namedSource.getLeft();
+        final CharStream source = namedSource.getRight();
+        final TranslationOptions options = getTranslationOptions();
+        final StatementCache statementCache = getStatementCache(inputFile);
+        if (!cache) {
+            final String bash = parse(origin, source, options, statementCache, compileStats);
+            return noShellcheck ? bash : assertNoShellcheckWarnings(bash, null, compileStats);
+        }
+
+        final Path baseDirectory = cacheDirectory != null ? resolve(cacheDirectory) : CacheDirectory.defaultPath();
+        final TranspileCache transpileCache = TranspileCache.of(baseDirectory);
+        // the whole file, shebang included
+        final String key = TranspileCache.key(origin, source.toString().getBytes(StandardCharsets.UTF_8), options);
+        final Optional<String> cached = transpileCache.get(key);
+        String bash;
+        if (cached.isPresent()) {
+            LOG.info("Using cached translation of {}", inputFile != null ? inputFile : "script");
+            bash = cached.get();
+        } else {
+            bash = parse(origin, source, options, statementCache, compileStats);
+            // only checked translations are reused
+            if (!noShellcheck) {
+                assertNoShellcheckWarnings(bash, ShellcheckCache.of(baseDirectory), compileStats);
+                transpileCache.put(key, bash);
             }
-            return Pair.of(inputFile.toString(), is);
+        }
+        LOG.info("Translation cache: {}.  ShellCheck cache: {}.",
+                TranspileCache.statistics(), ShellcheckCache.statistics());
+        return bash;
+    }
+
+    /** {@link Asserts#assertNoShellcheckWarnings(String, ShellcheckCache)}, timed into compileStats */
+    private static @Nonnull String assertNoShellcheckWarnings(
+            @Nonnull final String bash,
+            @Nullable final ShellcheckCache shellcheckCache,
+            @Nullable final CompileStats compileStats) {
+        final long start = System.nanoTime();
+        Asserts.assertNoShellcheckWarnings(bash, shellcheckCache);
+        if (compileStats != null) {
+            compileStats.recordShellcheck(System.nanoTime() - start);
+        }
+        return bash;
+    }
+
+    private @Nonnull TranslationOptions getTranslationOptions() {
+        return TranslationOptions.DEFAULT
+                .deterministic(deterministic || cache || statementCaches != null)
+                .bcCoprocess(bcCoprocess)
+                .bufferOutput(bufferOutput);
+    }
+
+    /** The statements of the last translation of inputFile, or null to translate every statement */
+    private @Nullable StatementCache getStatementCache(@Nullable final Path inputFile) {
+        return statementCaches != null && inputFile != null
+                ? statementCaches.computeIfAbsent(
+                        resolve(inputFile).toAbsolutePath().normalize(), path -> new StatementCache())
+                : null;
+    }
+
+    /** Gets the origin and the Bashpile source without any shebang line */
+    private @Nonnull Pair<String, CharStream> getNameAndSource(@Nullable final Path inputFile) throws IOException {
+        if (inputFile != null) {
+            return Pair.of(inputFile.toString(), AntlrUtils.readSource(findFile(resolve(inputFile))));
         } else if (bashpileScript != null) {
-            return Pair.of(bashpileScript, IOUtils.toInputStream(bashpileScript, StandardCharsets.UTF_8));
+            return Pair.of(bashpileScript, AntlrUtils.skipShebang(CharStreams.fromString(bashpileScript)));
         } else {
             throw new BashpileUncheckedException("Neither inputFile nor bashpileScript supplied.");
         }
     }
 
+    private @Nonnull Path resolve(@Nonnull final Path path) {
+        return workingDirectory != null ? workingDirectory.resolve(path) : path;
+    }
+
     private @Nonnull Path findFile(@Nonnull Path path) {
         path = path.normalize().toAbsolutePath();
         final Path filename = path.getFileName();
@@ -144,4 +475,10 @@ public class BashpileMain implements Callable<Integer> {
         }
         throw new  BashpileUncheckedException("Could not find " + path.getFileName());
     }
+
+    /** The result of compiling one file.  The message is the created filename, or why nothing was created. */
+    private record CompileStatus(int exitCode, @Nonnull String message) {}
+
+    /** The formats of <code>--stats</code>, lower case as typed on the command line */
+    private enum StatsFormat { json }
 }
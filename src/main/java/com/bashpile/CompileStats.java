@@ -0,0 +1,122 @@
+package com.bashpile;
+
+import org.apache.commons.text.StringEscapeUtils;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Timings and sizes of one compile, for <code>--stats=json</code>.  Stages that didn't run stay at zero.
+ * <br>
+ * Not thread safe, each compile gets its own.
+ */
+public final class CompileStats {
+
+    @Nonnull
+    private final String file;
+
+    private long lexNanos;
+
+    private long parseNanos;
+
+    private long translateNanos;
+
+    private long shellcheckNanos;
+
+    private long writeNanos;
+
+    private int tokens;
+
+    private int parseTreeNodes;
+
+    private long bashBytes;
+
+    private long bashLines;
+
+    private int unnests;
+
+    public CompileStats(@Nonnull final String file) {
+        this.file = file;
+    }
+
+    /* package */ void recordLex(final long nanos, final int tokenCount) {
+        lexNanos += nanos;
+        tokens = tokenCount;
+    }
+
+    /* package */ void recordParse(final long nanos, final int nodeCount) {
+        parseNanos += nanos;
+        parseTreeNodes = nodeCount;
+    }
+
+    /**
+     * @param nanos Including any time spent writing the translation, which is taken out again by
+     *  {@link #recordWriteDuringTranslation(long)}.
+     * @param unnestCount The subshell workarounds of the nested inlines.
+     */
+    /* package */ void recordTranslation(final long nanos, final int unnestCount) {
+        translateNanos += nanos;
+        unnests = unnestCount;
+    }
+
+    /* package */ void recordShellcheck(final long nanos) {
+        shellcheckNanos += nanos;
+    }
+
+    /** Adds time spent writing the translation after it was translated */
+    /* package */ void recordWrite(final long nanos) {
+        writeNanos += nanos;
+    }
+
+    /** Moves time spent writing while translating from the translation time to the write time */
+    /* package */ void recordWriteDuringTranslation(final long nanos) {
+        writeNanos += nanos;
+        translateNanos -= nanos;
+    }
+
+    /* package */ void recordBash(final long bytes, final long lines) {
+        bashBytes = bytes;
+        bashLines = lines;
+    }
+
+    /**
+     * One line of JSON.  The peak heap is of the whole JVM so far, which in a batch or the daemon includes other
+     * compiles.
+     */
+    public @Nonnull String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"file\":\"%s\",\"lexMillis\":%.3f,\"parseMillis\":%.3f,\"translateMillis\":%.3f,"
+                        + "\"shellcheckMillis\":%.3f,\"writeMillis\":%.3f,\"tokens\":%d,\"parseTreeNodes\":%d,"
+                        + "\"bashBytes\":%d,\"bashLines\":%d,\"unnests\":%d,\"peakHeapBytes\":%d}",
+                StringEscapeUtils.escapeJson(file),
+                millis(lexNanos),
+                millis(parseNanos),
+                millis(translateNanos),
+                millis(shellcheckNanos),
+                millis(writeNanos),
+                tokens,
+                parseTreeNodes,
+                bashBytes,
+                bashLines,
+                unnests,
+                peakHeapBytes());
+    }
+
+    // helpers
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /** The sum of the peak usage of each heap memory pool */
+    private static long peakHeapBytes() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getPeakUsage)
+                .mapToLong(usage -> usage != null ? usage.getUsed() : 0)
+                .sum();
+    }
+}
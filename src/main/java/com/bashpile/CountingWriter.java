@@ -0,0 +1,70 @@
+package com.bashpile;
+
+import javax.annotation.Nonnull;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** Counts the lines written through it and the time spent writing them, for {@link CompileStats}.  Not thread safe. */
+/* package */ final class CountingWriter extends FilterWriter {
+
+    private long lines = 0;
+
+    private long nanos = 0;
+
+    /* package */ CountingWriter(@Nonnull final Writer out) {
+        super(out);
+    }
+
+    /** The number of '\n's written */
+    /* package */ long lines() {
+        return lines;
+    }
+
+    /** The time spent writing, flushing and closing */
+    /* package */ long nanos() {
+        return nanos;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        final long start = System.nanoTime();
+        out.write(c);
+        nanos += System.nanoTime() - start;
+        lines += c == '\n' ? 1 : 0;
+    }
+
+    @Override
+    public void write(@Nonnull final char[] chars, final int offset, final int length) throws IOException {
+        final long start = System.nanoTime();
+        out.write(chars, offset, length);
+        nanos += System.nanoTime() - start;
+        for (int i = offset; i < offset + length; i++) {
+            lines += chars[i] == '\n' ? 1 : 0;
+        }
+    }
+
+    @Override
+    public void write(@Nonnull final String text, final int offset, final int length) throws IOException {
+        final long start = System.nanoTime();
+        out.write(text, offset, length);
+        nanos += System.nanoTime() - start;
+        for (int i = offset; i < offset + length; i++) {
+            lines += text.charAt(i) == '\n' ? 1 : 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        final long start = System.nanoTime();
+        out.flush();
+        nanos += System.nanoTime() - start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final long start = System.nanoTime();
+        out.close();
+        nanos += System.nanoTime() - start;
+    }
+}
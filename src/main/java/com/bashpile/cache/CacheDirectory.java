@@ -0,0 +1,108 @@
+package com.bashpile.cache;
+
+import com.bashpile.Strings;
+import com.bashpile.exceptions.BashpileUncheckedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * A directory of cache entries, each named by the hash of its key.
+ * Entries are written to a temporary file and moved into place, so concurrent compiles never see a partial entry.
+ */
+public class CacheDirectory {
+
+    private static final Logger LOG = LogManager.getLogger(CacheDirectory.class);
+
+    /** $XDG_CACHE_HOME/bashpile, or ~/.cache/bashpile when XDG_CACHE_HOME is not set */
+    public static @Nonnull Path defaultPath() {
+        final String cacheHome = System.getenv("XDG_CACHE_HOME");
+        return Strings.isNotBlank(cacheHome)
+                ? Path.of(cacheHome, "bashpile")
+                : Path.of(System.getProperty("user.home"), ".cache", "bashpile");
+    }
+
+    /**
+     * A SHA-256 of all the parts.  Each part is length-prefixed so moving bytes between parts changes the hash.
+     *
+     * @return The hash in lowercase hex.
+     */
+    public static @Nonnull String hash(@Nonnull final byte[]... parts) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final byte[] part : parts) {
+                digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(part.length).array());
+                digest.update(part);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new BashpileUncheckedException(e);
+        }
+    }
+
+    /** Hashes Strings as UTF-8 */
+    public static @Nonnull String hash(@Nonnull final String... parts) {
+        final byte[][] bytes = new byte[parts.length][];
+        for (int i = 0; i < parts.length; i++) {
+            bytes[i] = parts[i].getBytes(StandardCharsets.UTF_8);
+        }
+        return hash(bytes);
+    }
+
+    @Nonnull
+    private final Path directory;
+
+    public static @Nonnull CacheDirectory of(@Nonnull final Path directory) {
+        return new CacheDirectory(directory);
+    }
+
+    private CacheDirectory(@Nonnull final Path directory) {
+        this.directory = directory;
+    }
+
+    /** Where the entries are stored */
+    public @Nonnull Path path() {
+        return directory;
+    }
+
+    /** Reads the entry for <code>hash</code>, or empty if there isn't one or it can't be read */
+    public @Nonnull Optional<String> read(@Nonnull final String hash) {
+        try {
+            return Optional.of(Files.readString(directory.resolve(hash)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            LOG.warn("Could not read cache entry {} in {}", hash, directory, e);
+            return Optional.empty();
+        }
+    }
+
+    /** Writes the entry for <code>hash</code> atomically.  A failed write is logged, the cache is only an optimization */
+    public void write(@Nonnull final String hash, @Nonnull final String contents) {
+        try {
+            Files.createDirectories(directory);
+            final Path tempFile = Files.createTempFile(directory, hash, ".tmp");
+            try {
+                Files.writeString(tempFile, contents);
+                Files.move(tempFile, directory.resolve(hash),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not write cache entry {} in {}", hash, directory, e);
+        }
+    }
+}
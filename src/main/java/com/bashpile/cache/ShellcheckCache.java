@@ -0,0 +1,118 @@
+package com.bashpile.cache;
+
+import com.bashpile.Strings;
+import com.bashpile.shell.ExecutionResults;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * ShellCheck verdicts, passing and failing, keyed by a hash of the Bash and the ShellCheck executable and severity.
+ * Kept apart from the {@link TranspileCache} so that a new compiler build (or a dropped translation) only re-runs
+ * ShellCheck when the generated Bash actually changed.
+ * Only definite verdicts are kept, a crashed or killed ShellCheck run is retried the next time.
+ */
+public class ShellcheckCache {
+
+    private static final Logger LOG = LogManager.getLogger(ShellcheckCache.class);
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /** ShellCheck's exit code when it found nothing */
+    private static final int CLEAN = 0;
+
+    /** ShellCheck's exit code when it found something, other codes are for bad options or a failed run */
+    private static final int FINDINGS = 1;
+
+    /** The hits and misses of all ShellcheckCaches in this JVM, e.g. "3 hits, 1 miss" */
+    public static @Nonnull String statistics() {
+        final long misses = MISSES.get();
+        return "%d hits, %d %s".formatted(HITS.get(), misses, misses == 1 ? "miss" : "misses");
+    }
+
+    @Nonnull
+    private final CacheDirectory directory;
+
+    /** Stores entries in the shellcheck subdirectory of <code>baseDirectory</code> */
+    public static @Nonnull ShellcheckCache of(@Nonnull final Path baseDirectory) {
+        return new ShellcheckCache(CacheDirectory.of(baseDirectory.resolve("shellcheck")));
+    }
+
+    private ShellcheckCache(@Nonnull final CacheDirectory directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the ShellCheck results for <code>bash</code>, running <code>shellcheck</code> only on a miss.
+     *
+     * @param bash The Bash script to check.
+     * @param severity The --severity passed to ShellCheck.
+     * @param shellcheck Runs ShellCheck on the script.
+     * @return The cached or fresh results.  Only the exit code and stdout are kept, and only for exit codes 0 and 1.
+     */
+    public @Nonnull ExecutionResults check(
+            @Nonnull final String bash,
+            @Nonnull final String severity,
+            @Nonnull final Function<String, ExecutionResults> shellcheck) {
+        final String fingerprint = fingerprint();
+        if (fingerprint == null) {
+            LOG.debug("Could not find shellcheck on the PATH, not caching");
+            return shellcheck.apply(bash);
+        }
+        final String key = CacheDirectory.hash(fingerprint, severity, bash);
+        final Optional<String> entry = directory.read(key);
+        if (entry.isPresent()) {
+            HITS.incrementAndGet();
+            final String[] verdict = entry.get().split("\n", 2);
+            return new ExecutionResults(bash, Integer.parseInt(verdict[0]), verdict.length > 1 ? verdict[1] : "");
+        }
+        MISSES.incrementAndGet();
+        final ExecutionResults results = shellcheck.apply(bash);
+        if (results.exitCode() == CLEAN || results.exitCode() == FINDINGS) {
+            directory.write(key, "%d\n%s".formatted(results.exitCode(), results.stdout()));
+        } else {
+            LOG.debug("Not caching shellcheck exit code {}", results.exitCode());
+        }
+        return results;
+    }
+
+    // helpers
+
+    /**
+     * Identifies the installed ShellCheck by its path, size and modification time.
+     * Cheaper than spawning <code>shellcheck --version</code> and it changes on an upgrade.
+     *
+     * @return The fingerprint, or null if shellcheck is not on the PATH.
+     */
+    private static @Nullable String fingerprint() {
+        final String pathVariable = System.getenv("PATH");
+        if (Strings.isBlank(pathVariable)) {
+            return null;
+        }
+        for (final String pathDirectory : pathVariable.split(File.pathSeparator)) {
+            final Path executable = Path.of(pathDirectory, "shellcheck");
+            if (Files.isExecutable(executable)) {
+                try {
+                    final Path realPath = executable.toRealPath();
+                    return "%s %d %s".formatted(
+                            realPath, Files.size(realPath), Files.getLastModifiedTime(realPath));
+                } catch (IOException e) {
+                    LOG.debug("Could not fingerprint {}", executable, e);
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+}
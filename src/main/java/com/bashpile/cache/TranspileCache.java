@@ -0,0 +1,95 @@
+package com.bashpile.cache;
+
+import com.bashpile.engine.TranslationOptions;
+import com.bashpile.exceptions.BashpileUncheckedException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Translated and linted Bash, keyed by a hash of the Bashpile source, the origin, the compiler version and the
+ * {@link TranslationOptions}.  Only use with {@link TranslationOptions#deterministic()} translations, otherwise a
+ * cached translation differs from a fresh one.
+ */
+public class TranspileCache {
+
+    private static final Logger LOG = LogManager.getLogger(TranspileCache.class);
+
+    /** Version and build time, so a rebuilt compiler never sees translations from an older build */
+    private static final String COMPILER_VERSION = loadCompilerVersion();
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /** The hits and misses of all TranspileCaches in this JVM, e.g. "3 hits, 1 miss" */
+    public static @Nonnull String statistics() {
+        final long misses = MISSES.get();
+        return "%d hits, %d %s".formatted(HITS.get(), misses, misses == 1 ? "miss" : "misses");
+    }
+
+    /**
+     * Creates the cache key.
+     *
+     * @param origin The filename or script text, it is in the translation's header.
+     * @param source The Bashpile script.
+     * @param options The translation options.
+     * @return A hash to use with {@link #get(String)} and {@link #put(String, String)}.
+     */
+    public static @Nonnull String key(
+            @Nonnull final String origin, @Nonnull final byte[] source, @Nonnull final TranslationOptions options) {
+        return CacheDirectory.hash(
+                COMPILER_VERSION.getBytes(StandardCharsets.UTF_8),
+                options.toString().getBytes(StandardCharsets.UTF_8),
+                origin.getBytes(StandardCharsets.UTF_8),
+                source);
+    }
+
+    @Nonnull
+    private final CacheDirectory directory;
+
+    /** Stores entries in the transpile subdirectory of <code>baseDirectory</code> */
+    public static @Nonnull TranspileCache of(@Nonnull final Path baseDirectory) {
+        return new TranspileCache(CacheDirectory.of(baseDirectory.resolve("transpile")));
+    }
+
+    private TranspileCache(@Nonnull final CacheDirectory directory) {
+        this.directory = directory;
+    }
+
+    /** Gets the cached Bash for <code>key</code> */
+    public @Nonnull Optional<String> get(@Nonnull final String key) {
+        final Optional<String> ret = directory.read(key);
+        (ret.isPresent() ? HITS : MISSES).incrementAndGet();
+        LOG.debug("Transpile cache {} for {}", ret.isPresent() ? "hit" : "miss", key);
+        return ret;
+    }
+
+    /** Caches <code>bash</code>, which must have passed shellcheck */
+    public void put(@Nonnull final String key, @Nonnull final String bash) {
+        directory.write(key, bash);
+    }
+
+    // helpers
+
+    private static @Nonnull String loadCompilerVersion() {
+        final Properties properties = new Properties();
+        try (final InputStream is = TranspileCache.class.getResourceAsStream("/version.properties")) {
+            if (is == null) {
+                throw new BashpileUncheckedException("Could not find version.properties");
+            }
+            properties.load(is);
+        } catch (IOException e) {
+            throw new BashpileUncheckedException(e);
+        }
+        return "%s %s".formatted(properties.getProperty("version"), properties.getProperty("build"));
+    }
+}
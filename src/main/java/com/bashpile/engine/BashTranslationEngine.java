@@ -19,6 +19,7 @@ import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -45,17 +46,44 @@ public class BashTranslationEngine implements TranslationEngine {
 
     private static final Pattern GENERATED_VARIABLE_NAME = Pattern.compile("^\\$\\{__bp.*");
 
+    /** A variable's value, e.g. <code>${x}</code> */
+    private static final Pattern VARIABLE_EXPANSION = Pattern.compile("^\\$\\{(\\w+)}$");
+
+    /** Where a pure function leaves its return value for the caller */
+    private static final String RETURN_REGISTER = "__bp_return";
+
+    /** Where prints are collected when {@link TranslationOptions#bufferOutput()} */
+    private static final String OUTPUT_BUFFER = "__bp_output";
+
+    /** Writes out and empties the {@link #OUTPUT_BUFFER} */
+    private static final String FLUSH_FUNCTION = "__bp_flush";
+
+    /**
+     * Appends a printf to the {@link #OUTPUT_BUFFER}.  Each append copies the buffer, so it is written out once it
+     * reaches {@link #OUTPUT_BUFFER_LIMIT} characters.
+     */
+    private static final String PRINT_FUNCTION = "__bp_print";
+
+    /** The most characters kept in the {@link #OUTPUT_BUFFER}, the size of a Linux pipe buffer */
+    private static final int OUTPUT_BUFFER_LIMIT = 65536;
+
     // instance variables
 
     /** This is how we enforce type checking at compile time.  Mutable. */
     private final TypeStack typeStack = new TypeStack();
 
+    /** How deeply nested we are in blocks, calcs, inlines, etc.  Mutable. */
+    private final LevelCounter levelCounter = new LevelCounter();
+
     /** Should be set immediately after creation with {@link #setVisitor(BashpileVisitor)} */
     private BashpileVisitor visitor;
 
     @Nonnull
     private final String origin;
 
+    @Nonnull
+    private final TranslationOptions options;
+
     /** We need to name the anonymous blocks, anon0, anon1, anon2, etc.  We keep that counter here. */
     private int anonBlockCounter = 0;
 
@@ -65,14 +93,31 @@ public class BashTranslationEngine implements TranslationEngine {
     /** All the functions hoisted so far, so we can ensure we don't emit them twice */
     private final Set<String> foundForwardDeclarations = new HashSet<>();
 
+    /** The {@link #foundForwardDeclarations} in the order they were found, for {@link #getState()} */
+    private StateLog<String> foundForwardDeclarationsLog = new StateLog<>();
+
     /** The current create statement filenames for using in a trap command */
     private final Stack<String> createFilenamesStack = new Stack<>();
 
+    /** The literal values of the {@link ConstantCandidates} assigned so far, by variable name */
+    private final Map<String, String> constants = new HashMap<>();
+
+    /** The puts into {@link #constants}, for {@link #getState()} */
+    private StateLog<Map.Entry<String, String>> constantsLog = new StateLog<>();
+
+    /** The Bash names of the variables of the functions being inlined, by variable name.  Innermost last. */
+    private final Deque<Map<String, String>> inlineRenames = new ArrayDeque<>();
+
     // instance methods
 
     public BashTranslationEngine(@Nonnull final String origin) {
+        this(origin, TranslationOptions.DEFAULT);
+    }
+
+    public BashTranslationEngine(@Nonnull final String origin, @Nonnull final TranslationOptions options) {
         // escape newlines -- origin may be multi-line script
         this.origin = StringEscapeUtils.escapeJava(origin);
+        this.options = options;
     }
 
     @Override
@@ -80,10 +125,38 @@ public class BashTranslationEngine implements TranslationEngine {
         this.visitor = visitor;
     }
 
+    // incremental translation
+
+    @Override
+    public @Nonnull EngineState getState() {
+        return new EngineState(typeStack.checkpoint(), anonBlockCounter, subshellWorkaroundCounter,
+                foundForwardDeclarationsLog.checkpoint(), constantsLog.checkpoint());
+    }
+
+    @Override
+    public void setState(@Nonnull final EngineState state) {
+        typeStack.restore(state.typeStack());
+        anonBlockCounter = state.anonBlockCounter();
+        subshellWorkaroundCounter = state.subshellWorkaroundCounter();
+        foundForwardDeclarations.clear();
+        foundForwardDeclarationsLog = StateLog.replay(state.foundForwardDeclarations(), foundForwardDeclarations::add);
+        constants.clear();
+        constantsLog = StateLog.replay(
+                state.constants(), constant -> constants.put(constant.getKey(), constant.getValue()));
+    }
+
     // header translations
 
+    /** Leaves out the timestamp for {@link TranslationOptions#deterministic()} translations */
     @Override
     public Translation originHeader() {
+        if (options.deterministic()) {
+            return toParagraphTranslation("""
+                    #
+                    # Generated from %s
+                    #
+                    """.formatted(origin));
+        }
         final ZonedDateTime now = ZonedDateTime.now();
         return toParagraphTranslation("""
                 #
@@ -114,9 +187,32 @@ public class BashTranslationEngine implements TranslationEngine {
                 set -eEuo pipefail -o posix
                 export IFS=$'\\n\\t'
                 declare s
-                trap 's=$?; echo "Error (exit code $s) found on line $LINENO.  Command was: $BASH_COMMAND"; exit $s' ERR
-                """;
-        return toParagraphTranslation("# strict mode header\n%s".formatted(strictMode));
+                trap 's=$?; %secho "Error (exit code $s) found on line $LINENO.  Command was: $BASH_COMMAND"; exit $s' ERR
+                """.formatted(options.bufferOutput() ? FLUSH_FUNCTION + "; " : "");
+        final StringBuilder header = new StringBuilder("# strict mode header\n").append(strictMode);
+        if (options.bcCoprocess()) {
+            header.append("""
+
+                    # bc coprocess
+                    coproc __bp_bc { BC_LINE_LENGTH=0 bc 2>&1; }
+                    """);
+        }
+        if (options.bufferOutput()) {
+            header.append("""
+
+                    # output buffer
+                    declare %1$s=""
+                    %2$s () { printf "%%s" "${%1$s}"; %1$s=""; }
+                    %3$s () {
+                        local __bp_printed
+                        printf -v __bp_printed -- "$1"
+                        %1$s+="${__bp_printed}"
+                        if [ "${#%1$s}" -ge %4$d ]; then %2$s; fi
+                    }
+                    """.formatted(OUTPUT_BUFFER, FLUSH_FUNCTION, PRINT_FUNCTION, OUTPUT_BUFFER_LIMIT));
+        }
+        // the exit in the ERR trap runs the EXIT trap too.  Errors are read back as the result instead of hanging.
+        return toParagraphTranslation(header.append(exitTrap()).toString());
     }
 
     @Override
@@ -139,20 +235,28 @@ public class BashTranslationEngine implements TranslationEngine {
         final boolean exprExists = ctx.expression() != null;
         final Translation exprTranslation = exprExists ? visitor.visit(ctx.expression()) : EMPTY_TRANSLATION;
         assertTypesCoerce(type, exprTranslation.type(), ctx.typedId().Id().getText(), lineNumber(ctx));
+        if (isConstant(exprTranslation) && visitor.getConstantCandidates().contains(variableName)) {
+            constants.put(variableName, exprTranslation.body());
+            constantsLog.append(Map.entry(variableName, exprTranslation.body()));
+        }
+        if (visitor.getDeadCode().isDeadStore(variableName, !levelCounter.in(BLOCK_LABEL))) {
+            return EMPTY_TRANSLATION;
+        }
 
         // create translations
         final Translation comment = createCommentTranslation("assign statement", lineNumber(ctx));
         final Translation subcomment =
                 subcommentTranslationOrDefault(exprTranslation.hasPreamble(), "assign statement body");
-        final Translation variableDeclaration = toLineTranslation(getLocalText() + variableName + "\n");
+        final Translation variableDeclaration = toLineTranslation(getLocalText() + bashName(variableName) + "\n");
         // merge expr into the assignment
-        final String assignmentBody = exprExists ? "%s=%s\n".formatted(variableName, exprTranslation.body()) : "";
+        final String assignmentBody =
+                exprExists ? "%s=%s\n".formatted(bashName(variableName), exprTranslation.body()) : "";
         final Translation assignment =
                 toParagraphTranslation(assignmentBody).addPreamble(exprTranslation.preamble());
 
         // order is comment, preamble, subcomment, variable declaration, assignment
         final Translation subcommentToAssignment = subcomment.add(variableDeclaration).add(assignment);
-        return comment.add(subcommentToAssignment.mergePreamble()).type(NA).typeMetadata(NORMAL);
+        return flushFirst(ctx, comment.add(subcommentToAssignment.mergePreamble())).type(NA).typeMetadata(NORMAL);
     }
 
     @Override
@@ -168,6 +272,9 @@ public class BashTranslationEngine implements TranslationEngine {
         final Translation exprTranslation = visitor.visit(ctx.expression());
         final Type actualType = exprTranslation.type();
         Asserts.assertTypesCoerce(expectedType, actualType, variableName, lineNumber(ctx));
+        if (visitor.getDeadCode().isDeadStore(variableName, !levelCounter.in(BLOCK_LABEL))) {
+            return EMPTY_TRANSLATION;
+        }
 
         // create translations
         final Translation comment = createCommentTranslation("reassign statement", lineNumber(ctx));
@@ -175,37 +282,43 @@ public class BashTranslationEngine implements TranslationEngine {
                 subcommentTranslationOrDefault(exprTranslation.hasPreamble(), "reassignment statement body");
         // merge exprTranslation into reassignment
         final String reassignmentBody = "%s%s=%s\n".formatted(
-                getLocalText(true), variableName, exprTranslation.body());
+                getLocalText(true), bashName(variableName), exprTranslation.body());
         final Translation reassignment =
                 toLineTranslation(reassignmentBody).addPreamble(exprTranslation.preamble());
 
         // order is: comment, preamble, subcomment, reassignment
         final Translation preambleToReassignment = subcomment.add(reassignment).mergePreamble();
-        return comment.add(preambleToReassignment).assertParagraphBody().type(NA).typeMetadata(NORMAL);
+        return flushFirst(ctx, comment.add(preambleToReassignment)).assertParagraphBody().type(NA).typeMetadata(NORMAL);
     }
 
     @Override
     public @Nonnull Translation printStatement(@Nonnull final BashpileParser.PrintStatementContext ctx) {
         // guard
-        final BashpileParser.ArgumentListContext argList = ctx.argumentList();
-        if (argList == null) {
-            return toLineTranslation("printf \"\\n\"\n");
+        if (PrintCoalescing.isMergedIntoPrevious(ctx, options.bcCoprocess())) {
+            // already translated with the print before
+            return EMPTY_TRANSLATION;
+        }
+        final List<BashpileParser.PrintStatementContext> prints = PrintCoalescing.run(ctx, options.bcCoprocess());
+        if (prints.size() == 1 && ctx.argumentList() == null) {
+            return toLineTranslation(printfText("\\n"));
         }
 
         // body
-        try (final var ignored = new LevelCounter(PRINT_LABEL)) {
+        try (final var ignored = levelCounter.enter(PRINT_LABEL)) {
             final Translation comment = createCommentTranslation("print statement", lineNumber(ctx));
-            final Translation arguments = argList.expression().stream()
-                    .map(visitor::visit)
-                    .map(tr -> tr.isInlineOrSubshell() && inCommandSubstitution() ? unnest(tr) : tr)
-                    .map(tr -> tr.body("""
-                            printf "%s\\n"
-                            """.formatted(tr.unquoteBody().body())))
+            // one format string for every argument of every print
+            final Translation arguments = prints.stream()
+                    .flatMap(print -> print.argumentList() != null
+                            ? print.argumentList().expression().stream().map(visitor::visit)
+                            : Stream.of(EMPTY_TRANSLATION))
+                    .map(tr -> tr.isInlineOrSubshell() && levelCounter.inCommandSubstitution() ? unnest(tr) : tr)
+                    .map(tr -> tr.body(tr.unquoteBody().body() + "\\n"))
                     .reduce(Translation::add)
-                    .orElseThrow();
+                    .orElseThrow()
+                    .lambdaBody(this::printfText);
             final Translation subcomment =
                     subcommentTranslationOrDefault(arguments.hasPreamble(), "print statement body");
-            return comment.add(subcomment.add(arguments).mergePreamble());
+            return flushFirst(ctx, comment.add(subcomment.add(arguments).mergePreamble()));
         }
     }
 
@@ -213,13 +326,19 @@ public class BashTranslationEngine implements TranslationEngine {
     public @Nonnull Translation functionForwardDeclarationStatement(
             @Nonnull final BashpileParser.FunctionForwardDeclarationStatementContext ctx) {
         final ParserRuleContext functionDeclCtx = getFunctionDeclCtx(visitor, ctx);
-        try (var ignored = new LevelCounter(FORWARD_DECL_LABEL)) {
+        try (var ignored = levelCounter.enter(FORWARD_DECL_LABEL)) {
             // create translations
             final Translation comment = createCommentTranslation("function forward declaration", lineNumber(ctx));
             // remove trailing newline
             final Translation hoistedFunction = visitor.visit(functionDeclCtx).lambdaBody(String::stripTrailing);
             // register that this forward declaration has been handled
-            foundForwardDeclarations.add(ctx.typedId().Id().getText());
+            if (foundForwardDeclarations.add(ctx.typedId().Id().getText())) {
+                foundForwardDeclarationsLog.append(ctx.typedId().Id().getText());
+            }
+            if (!visitor.getDeadCode().isReachable(ctx.typedId().Id().getText())) {
+                // like the hoisted function, without a trailing newline
+                return comment.lambdaBody(String::stripTrailing);
+            }
             // add translations
             return comment.add(hoistedFunction.assertEmptyPreamble());
         }
@@ -248,7 +367,7 @@ public class BashTranslationEngine implements TranslationEngine {
         final Type retType = Type.valueOf(ctx.typedId().Type().getText().toUpperCase());
         typeStack.putFunctionTypes(functionName, new FunctionTypeInfo(typeList, retType));
 
-        try (var ignored = new LevelCounter(BLOCK_LABEL); var ignored2 = typeStack.pushFrame()) {
+        try (var ignored = levelCounter.enter(BLOCK_LABEL); var ignored2 = typeStack.pushFrame()) {
 
             // register local variable types
             ctx.paramaters().typedId().forEach(
@@ -272,9 +391,19 @@ public class BashTranslationEngine implements TranslationEngine {
             }
             final Stream<ParserRuleContext> contextStream =
                     addContexts(ctx.functionBlock().statement(), ctx.functionBlock().returnPsudoStatement());
-            final String blockBody = visitBlock(visitor, contextStream).assertEmptyPreamble().body();
-            final Translation functionDeclaration = toParagraphTranslation("%s () {\n%s%s}\n"
-                    .formatted(functionName, assertIsLine(namedParams), assertIsParagraph(blockBody)));
+            // the block body is added, not formatted in, so that it's indented when written out
+            Translation blockBody = visitBlock(visitor, contextStream).assertEmptyPreamble();
+            if (!visitor.getDeadCode().isReachable(functionName)) {
+                // translated anyway for the type checks
+                return EMPTY_TRANSLATION;
+            } else if (namedParams.isEmpty() && !blockBody.hasBody()) {
+                // Bash doesn't allow an empty function
+                blockBody = toLineTranslation(":\n").indentBody();
+            }
+            final Translation functionDeclaration = toParagraphTranslation("%s () {\n%s"
+                    .formatted(functionName, assertIsLine(namedParams)))
+                    .add(blockBody)
+                    .add(toLineTranslation("}\n"));
             return comment.add(functionDeclaration);
         }
     }
@@ -282,16 +411,23 @@ public class BashTranslationEngine implements TranslationEngine {
     @Override
     public @Nonnull Translation anonymousBlockStatement(
             @Nonnull final BashpileParser.AnonymousBlockStatementContext ctx) {
-        try (var ignored = new LevelCounter(BLOCK_LABEL); var ignored2 = typeStack.pushFrame()) {
+        try (var ignored = levelCounter.enter(BLOCK_LABEL); var ignored2 = typeStack.pushFrame()) {
             final Translation comment = createHoistedCommentTranslation("anonymous block", lineNumber(ctx));
             // behind the scenes we need to name the anonymous function
             final String anonymousFunctionName = "anon" + anonBlockCounter++;
             // map of x to x needed for upcasting to parent type
             final Stream<ParserRuleContext> stmtStream = ctx.statement().stream().map(x -> x);
-            final String blockBody = visitBlock(visitor, stmtStream).body();
+            Translation blockBody = visitBlock(visitor, stmtStream);
+            if (!blockBody.hasBody()) {
+                return EMPTY_TRANSLATION;
+            } else if (options.bufferOutput() && PrintCoalescing.containsPrint(ctx)) {
+                blockBody = blockBody.add(toLineTranslation(FLUSH_FUNCTION + "\n").indentBody());
+            }
             // define function and then call immediately with no arguments
-            final Translation selfCallingAnonymousFunction = toParagraphTranslation("%s () {\n%s}; %s\n"
-                    .formatted(anonymousFunctionName, assertIsParagraph(blockBody), anonymousFunctionName));
+            final Translation selfCallingAnonymousFunction =
+                    toLineTranslation("%s () {\n".formatted(anonymousFunctionName))
+                    .add(blockBody)
+                    .add(toLineTranslation("}; %s\n".formatted(anonymousFunctionName)));
             return comment.add(selfCallingAnonymousFunction);
         }
     }
@@ -345,10 +481,10 @@ public class BashTranslationEngine implements TranslationEngine {
             final Translation bodyTranslation = toParagraphTranslation(body);
 
             // merge translations and preambles
-            return comment.add(
+            return flushFirst(ctx, comment.add(
                     subcomment.add(bodyTranslation)
                     .addPreamble(shellString.preamble())
-                    .mergePreamble());
+                    .mergePreamble()));
         } finally {
             createFilenamesStack.pop();
         }
@@ -375,13 +511,13 @@ public class BashTranslationEngine implements TranslationEngine {
                 %s
                 ## end of wrapped body of creates statement
                 rm -f %s
-                trap - INT TERM EXIT""".formatted(
-                String.join(" ", createFilenamesStack), statements.body(), filename);
+                %s""".formatted(
+                String.join(" ", createFilenamesStack), statements.body(), filename, untrap());
         ifBody = lambdaAllLines(ifBody, str -> TAB + str);
         ifBody = lambdaFirstLine(ifBody, String::stripLeading);
 
         // `return` in an if statement doesn't work, so we need to `exit` if we're not in a function or subshell
-        final String exitOrReturn = isTopLevelShell() && !in(BLOCK_LABEL) ? "exit" : "return";
+        final String exitOrReturn = isTopLevelShell() && !levelCounter.in(BLOCK_LABEL) ? "exit" : "return";
         String elseBody = """
                 printf "Failed to create %%s properly." "%s"
                 rm -f %s
@@ -407,7 +543,7 @@ public class BashTranslationEngine implements TranslationEngine {
                 subcommentTranslationOrDefault(expr.hasPreamble(), "expression statement body");
         // order is: comment, preamble, subcomment, expr
         final Translation exprStatement = subcomment.add(expr).mergePreamble();
-        return comment.add(exprStatement).type(expr.type()).typeMetadata(expr.typeMetadata());
+        return flushFirst(ctx, comment.add(exprStatement)).type(expr.type()).typeMetadata(expr.typeMetadata());
     }
 
     @Override
@@ -423,16 +559,24 @@ public class BashTranslationEngine implements TranslationEngine {
                 exprExists ? visitor.visit(ctx.expression()) : Translation.EMPTY_TYPE;
         assertTypesCoerce(functionTypes.returnType(), exprTranslation.type(), functionName, lineNumber(ctx));
 
+        // the function's prints are written out before it returns, so they aren't lost in a command substitution
+        final boolean flush = options.bufferOutput() && PrintCoalescing.containsPrint(enclosingFunction.functionBlock());
         if (!exprExists) {
-            return EMPTY_TRANSLATION;
+            return flush ? toLineTranslation(FLUSH_FUNCTION + "\n") : EMPTY_TRANSLATION;
         }
 
         final Translation comment = createHoistedCommentTranslation("return statement", lineNumber(ctx));
-        final Function<String, String> toPrintf =
-                str -> "printf \"%s\"\n".formatted(STRING_QUOTES.matcher(str).replaceAll(""));
+        // a pure function is called in the caller's shell, so it can't return through standard out
+        final String printfOptions = visitor.getPureFunctions().contains(functionName)
+                ? "-v %s ".formatted(RETURN_REGISTER) : "";
+        final Function<String, String> toPrintf = str -> "printf %s\"%s\"\n"
+                .formatted(printfOptions, STRING_QUOTES.matcher(str).replaceAll(""));
         final Translation exprBody = toParagraphTranslation(lambdaLastLine(exprTranslation.body(), toPrintf))
                 .addPreamble(exprTranslation.preamble());
-        return comment.add(exprBody.mergePreamble());
+        final Translation returnStatement = comment.add(exprBody.mergePreamble());
+        return flush
+                ? returnStatement.lambdaBody(body -> FLUSH_FUNCTION + "\n" + body)
+                : flushFirst(ctx, returnStatement);
     }
 
     // expressions
@@ -444,7 +588,10 @@ public class BashTranslationEngine implements TranslationEngine {
     @Override
     public Translation typecastExpression(BashpileParser.TypecastExpressionContext ctx) {
         final Type castTo = Type.valueOf(ctx.Type().getText().toUpperCase());
-        Translation expression = visitor.visit(ctx.expression());
+        Translation expression;
+        try (var ignored = levelCounter.enter(TYPECAST_LABEL)) {
+            expression = visitor.visit(ctx.expression());
+        }
         final int lineNumber = lineNumber(ctx);
         final TypeError typecastError = new TypeError(
                 "Casting %s to %s is not supported".formatted(expression.type(), castTo), lineNumber);
@@ -493,6 +640,22 @@ public class BashTranslationEngine implements TranslationEngine {
         // lookup return type of this function
         final Type retType = typeStack.getFunctionTypes(id).returnType();
 
+        // a pure function runs without a subshell, its return value is copied from the register right away
+        // so that the next call doesn't overwrite it
+        final boolean statement = ctx.getParent() instanceof BashpileParser.ExpressionStatementContext;
+        final Optional<BashpileParser.FunctionDeclarationStatementContext> inlineDeclaration =
+                visitor.getInlineFunctions().find(functionName);
+        if (!statement && inlineDeclaration.isPresent()) {
+            final Translation inlined = inline(inlineDeclaration.get(), argumentTranslations, retType);
+            return new Translation(preambles.preamble() + inlined.preamble(), inlined.body(), retType, NORMAL);
+        } else if (!statement && visitor.getPureFunctions().contains(functionName)) {
+            final String returnName = "__bp_functionReturn%d".formatted(subshellWorkaroundCounter++);
+            final Translation call = toLineTranslation("%s%s\n".formatted(id, argText))
+                    .add(toLineTranslation("%s%s=\"${%s}\"\n".formatted(
+                            levelCounter.in(BLOCK_LABEL) ? "local " : "", returnName, RETURN_REGISTER)));
+            return new Translation(preambles.preamble() + call.body(), "${%s}".formatted(returnName), retType, NORMAL);
+        }
+
         // suppress output if we are a top-level statement
         // this covers the case of calling a str function without using the string
         final boolean topLevelStatement = isTopLevelShell();
@@ -509,7 +672,7 @@ public class BashTranslationEngine implements TranslationEngine {
         Translation ret = visitor.visit(ctx.expression());
 
         // only keep parenthesis for necessary operations (e.g. "(((5)))" becomes "5" outside of a calc)
-        if (ret.type().isPossiblyNumeric() && LevelCounter.in(CALC_LABEL)) {
+        if (ret.type().isPossiblyNumeric() && levelCounter.in(CALC_LABEL)) {
             ret = ret.parenthesizeBody();
         }
         return ret;
@@ -519,21 +682,48 @@ public class BashTranslationEngine implements TranslationEngine {
     public @Nonnull Translation calculationExpression(@Nonnull final BashpileParser.CalculationExpressionContext ctx) {
         // get the child translations
         List<Translation> childTranslations;
-        try (var ignored = new LevelCounter(CALC_LABEL)) {
+        try (var ignored = levelCounter.enter(CALC_LABEL)) {
             childTranslations = ctx.children.stream().map(visitor::visit).toList();
         }
 
         // child translations in the format of 'expr operator expr', so we are only interested in the first and last
         final Translation first = childTranslations.get(0);
         final Translation second = getLast(childTranslations);
+        // only integers all the way down can use Bash arithmetic, a nested calc passes on INT or NUMBER
+        final boolean integers = INT.equals(first.type()) && INT.equals(second.type());
+        final boolean nested = levelCounter.in(CALC_LABEL);
+        // literals are calculated now, with the results Bash or bc would give
+        if (!levelCounter.in(TYPECAST_LABEL) && isFoldable(ctx)
+                && first.type().isNumeric() && second.type().isNumeric()
+                && !first.hasPreamble() && !second.hasPreamble()) {
+            final Optional<String> folded =
+                    ConstantFolding.fold(first.body(), ctx.op.getText(), second.body(), integers, nested);
+            if (folded.isPresent()) {
+                return new Translation(folded.get(), integers ? INT : Type.NUMBER, NORMAL);
+            }
+        }
+        final boolean bashArithmetic = integers && isBashArithmetic(ctx);
+        if (bashArithmetic) {
+            childTranslations = List.of(
+                    decimalOperand(first), childTranslations.get(1), decimalOperand(second));
+        }
         // check for nested calc call
-        if (LevelCounter.in(CALC_LABEL) && maybeNumericExpressions(first, second)) {
-            return toTranslation(childTranslations.stream(), Type.NUMBER, NORMAL);
+        if (nested && maybeNumericExpressions(first, second)) {
+            return toTranslation(childTranslations.stream(), integers ? INT : Type.NUMBER, NORMAL);
             // types section
         } else if (maybeStringExpressions(first, second)) {
             final String op = ctx.op.getText();
             Asserts.assertEquals("+", op, "Only addition is allowed on Strings, but got " + op);
             return toTranslation(Stream.of(first.unquoteBody(), second.unquoteBody()), STR, NORMAL);
+        } else if (bashArithmetic) {
+            // no fork of bc, and Bash's integer division truncates toward zero like bc's with its default scale of 0
+            final String translationsString = childTranslations.stream()
+                    .map(Translation::body).collect(Collectors.joining(" "));
+            final boolean hasInlines = childTranslations.stream().anyMatch(Translation::isInlineOrSubshell);
+            return toTranslation(childTranslations.stream(), INT, hasInlines ? INLINE : NORMAL)
+                    .body("$((%s))".formatted(translationsString));
+        } else if (maybeNumericExpressions(first, second) && options.bcCoprocess()) {
+            return bcCoprocessCalculation(childTranslations);
         } else if (maybeNumericExpressions(first, second)) {
             final String translationsString = childTranslations.stream()
                     .map(Translation::body).collect(Collectors.joining(" "));
@@ -554,8 +744,14 @@ public class BashTranslationEngine implements TranslationEngine {
     public Translation idExpression(BashpileParser.IdExpressionContext ctx) {
         final String variableName = ctx.Id().getText();
         final Type type = typeStack.getVariableType(variableName);
+        final String constant = constants.get(variableName);
+        if (constant != null && !levelCounter.in(TYPECAST_LABEL) && !type.equals(Type.NOT_FOUND)) {
+            // parenthesis keep e.g. `x - -1` from becoming a decrement
+            final boolean parenthesize = constant.startsWith("-") && levelCounter.in(CALC_LABEL);
+            return new Translation(parenthesize ? "(%s)".formatted(constant) : constant, type, NORMAL);
+        }
         // use ${var} syntax instead of $var for string concatenations, e.g. `${var}someText`
-        return new Translation("${%s}".formatted(ctx.getText()), type, NORMAL);
+        return new Translation("${%s}".formatted(bashName(variableName)), type, NORMAL);
     }
 
     // expression helper rules
@@ -581,13 +777,13 @@ public class BashTranslationEngine implements TranslationEngine {
                             .collect(Collectors.joining("\n"))
                             + trailingNewline;
                 });
-        if (LevelCounter.inCommandSubstitution()) {
+        if (levelCounter.inCommandSubstitution()) {
             // then wrap in command substitution and unnest as needed
             contentsTranslation = contentsTranslation.body("$(%s)".formatted(contentsTranslation.body()));
-            for (int i = 0; i < LevelCounter.getCommandSubstitution(); i++) {
+            for (int i = 0; i < levelCounter.getCommandSubstitution(); i++) {
                 contentsTranslation = unnest(contentsTranslation);
             }
-        } else if (LevelCounter.in(PRINT_LABEL)) {
+        } else if (levelCounter.in(PRINT_LABEL)) {
             contentsTranslation = contentsTranslation.body("$(%s)".formatted(contentsTranslation.body()));
         } // else top level -- no additional processing needed
         return contentsTranslation.unescapeBody();
@@ -604,8 +800,8 @@ public class BashTranslationEngine implements TranslationEngine {
     @Override
     public Translation inline(BashpileParser.InlineContext ctx) {
         // get the inline nesting level before our try-with-resources statement
-        final int inlineNestingDepth = LevelCounter.get(LevelCounter.INLINE_LABEL);
-        try (var ignored = new LevelCounter(LevelCounter.INLINE_LABEL)) {
+        final int inlineNestingDepth = levelCounter.get(INLINE_LABEL);
+        try (var ignored = levelCounter.enter(INLINE_LABEL)) {
             final Stream<Translation> children = ctx.children.stream().map(visitor::visit);
             Translation childrenTranslation = toTranslation(children, Type.UNKNOWN, NORMAL).unescapeBody();
             for (int i = 0; i < inlineNestingDepth; i++) {
@@ -617,6 +813,66 @@ public class BashTranslationEngine implements TranslationEngine {
 
     // helpers
 
+    /** A printf of format, or an append to the output buffer */
+    private @Nonnull String printfText(@Nonnull final String format) {
+        // not a printf -v of the buffer and format, that would copy the whole buffer through printf each time
+        return options.bufferOutput()
+                ? "%s \"%s\"\n".formatted(PRINT_FUNCTION, format)
+                : "printf \"%s\"\n".formatted(format);
+    }
+
+    /** Writes out the output buffer before translation if running ctx may write to standard output too */
+    private @Nonnull Translation flushFirst(@Nonnull final ParserRuleContext ctx, @Nonnull final Translation translation) {
+        if (!options.bufferOutput() || !PrintCoalescing.mayWrite(ctx, visitor.getPureFunctions())) {
+            return translation;
+        }
+        return translation.lambdaBody(body -> FLUSH_FUNCTION + "\n" + body);
+    }
+
+    /** Removes the traps of a creates statement and puts back the {@link #exitTrap()} */
+    private @Nonnull String untrap() {
+        final String exitTrap = exitTrap();
+        return exitTrap.isEmpty() ? "trap - INT TERM EXIT" : "trap - INT TERM\n" + exitTrap.stripTrailing();
+    }
+
+    /** The EXIT trap that writes out the output buffer and stops the bc coprocess, or the empty string */
+    private @Nonnull String exitTrap() {
+        final List<String> commands = new ArrayList<>(2);
+        if (options.bufferOutput()) {
+            commands.add(FLUSH_FUNCTION);
+        }
+        if (options.bcCoprocess()) {
+            commands.add("kill \"${__bp_bc_PID:-}\" 2>/dev/null || true");
+        }
+        return commands.isEmpty() ? "" : "trap '%s' EXIT\n".formatted(String.join("; ", commands));
+    }
+
+    /**
+     * Sends a calculation to the bc coprocess started by {@link #strictModeHeader()} and reads back the result,
+     * without a fork.  Inline operands are unnested so their exit codes are still checked.
+     * <br>
+     * Subshells and pipelines don't get the file descriptors of the coprocess, only command substitutions do.
+     * There we fall back to a bc of our own.
+     */
+    private @Nonnull Translation bcCoprocessCalculation(@Nonnull final List<Translation> childTranslations) {
+        final List<Translation> operands = childTranslations.stream()
+                .map(tr -> tr.isInlineOrSubshell() ? unnest(tr) : tr)
+                .toList();
+        final String calculation = operands.stream().map(Translation::body).collect(Collectors.joining(" "));
+        final String result = "__bp_bcResult%d".formatted(subshellWorkaroundCounter++);
+        final String exchange = """
+                if { true >&"${__bp_bc[1]}"; } 2>/dev/null; then
+                    printf '%%s\\n' "%1$s" >&"${__bp_bc[1]}"
+                    read -r %2$s <&"${__bp_bc[0]}"
+                else
+                    %2$s="$(bc <<< "%1$s")"
+                fi
+                """.formatted(calculation, result);
+        return toTranslation(operands.stream(), Type.NUMBER, NORMAL)
+                .addPreamble(exchange)
+                .body("${%s}".formatted(result));
+    }
+
     /** Get the Bashpile script linenumber that ctx is found in. */
     private int lineNumber(@Nonnull final ParserRuleContext ctx) {
         return ctx.start.getLine();
@@ -626,9 +882,9 @@ public class BashTranslationEngine implements TranslationEngine {
         return toLineTranslation("# %s, Bashpile line %d\n".formatted(name, lineNumber));
     }
 
-    private static @Nonnull Translation createHoistedCommentTranslation(
+    private @Nonnull Translation createHoistedCommentTranslation(
             @Nonnull final String name, final int lineNumber) {
-        final String hoisted = LevelCounter.in(FORWARD_DECL_LABEL) ? " (hoisted)" : "";
+        final String hoisted = levelCounter.in(FORWARD_DECL_LABEL) ? " (hoisted)" : "";
         return toLineTranslation("# %s, Bashpile line %d%s\n".formatted(name, lineNumber, hoisted));
     }
 
@@ -640,12 +896,12 @@ public class BashTranslationEngine implements TranslationEngine {
         return EMPTY_TRANSLATION;
     }
 
-    private static @Nonnull String getLocalText() {
+    private @Nonnull String getLocalText() {
         return getLocalText(false);
     }
 
-    private static @Nonnull String getLocalText(final boolean reassignment) {
-        final boolean indented = LevelCounter.in(BLOCK_LABEL);
+    private @Nonnull String getLocalText(final boolean reassignment) {
+        final boolean indented = levelCounter.in(BLOCK_LABEL);
         if (indented && !reassignment) {
             return "local ";
         } else if (!indented && !reassignment) {
@@ -691,8 +947,134 @@ public class BashTranslationEngine implements TranslationEngine {
         return tr.addPreamble(preambles.body()).body("${%s}".formatted(subshellReturn));
     }
 
-    private static boolean isTopLevelShell() {
-        return !in(CALC_LABEL) && !in(PRINT_LABEL);
+    /**
+     * Translates a call to one of the {@link InlineFunctions} as the function body, without a call.  The parameters and
+     * variables get names of their own so that they can't capture the caller's variables.
+     */
+    private @Nonnull Translation inline(
+            @Nonnull final BashpileParser.FunctionDeclarationStatementContext decl,
+            @Nonnull final List<Translation> argumentTranslations,
+            @Nonnull final Type retType) {
+        final String returnName = "__bp_inline%d".formatted(subshellWorkaroundCounter++);
+        final Map<String, String> renames = new HashMap<>();
+        final List<BashpileParser.TypedIdContext> params = decl.paramaters().typedId();
+        Stream.concat(params.stream(), decl.functionBlock().statement().stream()
+                        .filter(BashpileParser.AssignmentStatementContext.class::isInstance)
+                        .map(stmt -> ((BashpileParser.AssignmentStatementContext) stmt).typedId()))
+                .map(typedId -> typedId.Id().getText())
+                .forEach(name -> renames.put(name, "%s_%s".formatted(returnName, name)));
+
+        // the body is translated like statements of the caller, not like the expression the call is in
+        Translation body = toLineTranslation("## inline of %s\n".formatted(decl.typedId().Id().getText()));
+        try (var ignored = typeStack.pushFrame();
+                var ignored2 = levelCounter.suspend(CALC_LABEL, PRINT_LABEL, TYPECAST_LABEL)) {
+            // bind the arguments, declared and assigned separately so that a failing argument isn't masked
+            for (int i = 0; i < params.size(); i++) {
+                final String name = params.get(i).Id().getText();
+                typeStack.putVariableType(name, Type.valueOf(params.get(i).Type().getText().toUpperCase()),
+                        lineNumber(decl));
+                body = body.add(toLineTranslation(getLocalText() + renames.get(name) + "\n"))
+                        .add(toLineTranslation("%s=\"%s\"\n".formatted(
+                                renames.get(name), argumentTranslations.get(i).body())));
+            }
+
+            inlineRenames.addLast(renames);
+            try {
+                for (final BashpileParser.StatementContext stmt : decl.functionBlock().statement()) {
+                    body = body.add(visitor.visit(stmt).assertEmptyPreamble());
+                }
+                // returned the same way as in returnPsudoStatement
+                final Translation returned = visitor.visit(decl.functionBlock().returnPsudoStatement().expression());
+                body = body.add(toParagraphTranslation(returned.preamble()))
+                        .add(toLineTranslation(getLocalText() + returnName + "\n"))
+                        .add(toLineTranslation("printf -v %s \"%s\"\n".formatted(
+                                returnName, STRING_QUOTES.matcher(returned.body()).replaceAll(""))));
+            } finally {
+                inlineRenames.removeLast();
+            }
+        }
+        return new Translation(body.body(), "${%s}".formatted(returnName), retType, NORMAL);
+    }
+
+    /** The name of variableName in the Bash script, which is different in an inlined function */
+    private @Nonnull String bashName(@Nonnull final String variableName) {
+        final Map<String, String> renames = inlineRenames.peekLast();
+        return renames != null ? renames.getOrDefault(variableName, variableName) : variableName;
+    }
+
+    private boolean isTopLevelShell() {
+        return !levelCounter.in(CALC_LABEL) && !levelCounter.in(PRINT_LABEL);
+    }
+
+    /**
+     * True for a number that is known at compile time.  Strings are left in their variables, a string literal may need
+     * quotes where a variable doesn't.
+     */
+    private static boolean isConstant(@Nonnull final Translation translation) {
+        return !translation.hasPreamble() && translation.typeMetadata().equals(NORMAL)
+                && translation.type().isNumeric() && Type.isNumberString(translation.body());
+    }
+
+    /**
+     * The tree of a calculation ignores operator precedence, it is kept in the text that Bash or bc see.
+     * E.g. <code>1 + 2 * 3</code> parses as <code>(1 + 2) * 3</code> but is <code>7</code> at runtime.
+     * So a calculation is only folded when its part of the text means the same on its own.
+     */
+    private static boolean isFoldable(@Nonnull final BashpileParser.CalculationExpressionContext ctx) {
+        if (!(ctx.getParent() instanceof BashpileParser.CalculationExpressionContext parent)) {
+            return true;
+        }
+        final boolean multiplicative = isMultiplicative(ctx.op.getText());
+        final boolean parentMultiplicative = isMultiplicative(parent.op.getText());
+        return parent.expression(0) == ctx
+                ? multiplicative || !parentMultiplicative
+                : multiplicative && !parentMultiplicative;
+    }
+
+    private static boolean isMultiplicative(@Nonnull final String op) {
+        return op.equals("*") || op.equals("/");
+    }
+
+    /**
+     * True if Bash arithmetic gives the same result as bc for a calculation, and for the calculation it is nested in.
+     * That is when all the operands are int literals or int variables.  Values from a command, e.g. the
+     * <code>08</code> of <code>$(date +%m)</code>, are left to bc, Bash reads a leading zero as octal.
+     */
+    private boolean isBashArithmetic(@Nonnull final BashpileParser.CalculationExpressionContext ctx) {
+        // the outermost calculation decides for all the nested ones
+        ParserRuleContext root = ctx;
+        while (root.getParent() instanceof BashpileParser.CalculationExpressionContext
+                || root.getParent() instanceof BashpileParser.ParenthesisExpressionContext) {
+            root = root.getParent();
+        }
+        return hasOnlyIntOperands(root);
+    }
+
+    private boolean hasOnlyIntOperands(@Nonnull final ParserRuleContext expression) {
+        if (expression instanceof BashpileParser.CalculationExpressionContext calculation) {
+            return hasOnlyIntOperands(calculation.expression(0)) && hasOnlyIntOperands(calculation.expression(1));
+        } else if (expression instanceof BashpileParser.ParenthesisExpressionContext parenthesis) {
+            return hasOnlyIntOperands(parenthesis.expression());
+        } else if (expression instanceof BashpileParser.NumberExpressionContext number) {
+            return INT.equals(Type.parseNumberString(number.getText()));
+        } else if (expression instanceof BashpileParser.IdExpressionContext id) {
+            return INT.equals(typeStack.getVariableType(id.Id().getText()));
+        }
+        return false;
+    }
+
+    /**
+     * Makes Bash arithmetic read a variable as a decimal, like bc does, instead of reading <code>010</code> as octal.
+     * It gets a <code>10#</code> base prefix after its sign.  Literals can't have leading zeros.
+     */
+    private static @Nonnull Translation decimalOperand(@Nonnull final Translation operand) {
+        final Matcher variable = VARIABLE_EXPANSION.matcher(operand.body());
+        if (variable.matches()) {
+            // e.g. -08 is -10#08, 10#-08 is an error
+            return operand.body("${%1$s%%%%[!+-]*}10#${%1$s#[-+]}".formatted(variable.group(1)));
+        }
+        // a literal, or a nested calculation with decimal operands
+        return operand;
     }
 
     // typecast helpers
@@ -719,6 +1101,15 @@ public class BashTranslationEngine implements TranslationEngine {
             @Nonnull Translation expression,
             final int lineNumber,
             @Nonnull final TypeError typecastError) {
+        // e.g. an integer calculation, only known at runtime
+        if (!Type.isNumberString(expression.body())) {
+            return switch (castTo) {
+                case INT, FLOAT -> expression;
+                case STR -> expression.quoteBody();
+                default -> throw typecastError;
+            };
+        }
+
         // parse expression to a BigInteger
         BigInteger expressionValue;
         try {
@@ -3,6 +3,7 @@ package com.bashpile.engine;
 import com.bashpile.BashpileParser;
 import com.bashpile.BashpileParserBaseVisitor;
 import com.bashpile.engine.strongtypes.Type;
+import com.bashpile.exceptions.BashpileUncheckedException;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.TerminalNode;
 import org.apache.logging.log4j.LogManager;
@@ -10,8 +11,17 @@ import org.apache.logging.log4j.Logger;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.InputStream;
-
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static com.bashpile.AntlrUtils.getFunctionDeclCtx;
 import static com.bashpile.engine.Translation.NEWLINE;
 import static com.bashpile.engine.strongtypes.TypeMetadata.NORMAL;
 
@@ -28,8 +38,49 @@ public class BashpileVisitor extends BashpileParserBaseVisitor<Translation> {
 
     private ParserRuleContext contextRoot;
 
+    /** The function declarations under {@link #contextRoot} */
+    private FunctionDeclarationIndex functionDeclarationIndex;
+
+    /** The variables under {@link #contextRoot} that may be replaced by their values */
+    private ConstantCandidates constantCandidates;
+
+    /** The functions under {@link #contextRoot} that may be called without a subshell */
+    private PureFunctions pureFunctions;
+
+    /** The functions under {@link #contextRoot} that are translated at their call sites */
+    private InlineFunctions inlineFunctions;
+
+    /** What under {@link #contextRoot} can be left out of the translation */
+    private DeadCode deadCode;
+
+    /** The statements of the last translation of this file, or null to translate every statement */
+    @Nullable
+    private final StatementCache statementCache;
+
+    /** Where each top-level statement is written as soon as it's translated, or null to return the program */
+    @Nullable
+    private final Writer output;
+
     public BashpileVisitor(@Nonnull final TranslationEngine translator) {
+        this(translator, null);
+    }
+
+    public BashpileVisitor(
+            @Nonnull final TranslationEngine translator, @Nullable final StatementCache statementCache) {
+        this(translator, statementCache, null);
+    }
+
+    /**
+     * @param output When set {@link #visitProgram(BashpileParser.ProgramContext)} writes the translation here a
+     *               top-level statement at a time, so only the largest statement is held in memory.
+     */
+    public BashpileVisitor(
+            @Nonnull final TranslationEngine translator,
+            @Nullable final StatementCache statementCache,
+            @Nullable final Writer output) {
         this.translator = translator;
+        this.statementCache = statementCache;
+        this.output = output;
         translator.setVisitor(this);
     }
 
@@ -43,24 +94,166 @@ public class BashpileVisitor extends BashpileParserBaseVisitor<Translation> {
         return contextRoot;
     }
 
+    /**
+     * The function declarations of the program, indexed once for all the forward declarations and later passes.
+     * Built on first use.
+     */
+    public @Nonnull FunctionDeclarationIndex getFunctionDeclarationIndex() {
+        if (functionDeclarationIndex == null) {
+            functionDeclarationIndex = FunctionDeclarationIndex.of(Objects.requireNonNull(contextRoot));
+        }
+        return functionDeclarationIndex;
+    }
+
+    /** The variables of the program that may be replaced by their values.  None before the first visit. */
+    public @Nonnull ConstantCandidates getConstantCandidates() {
+        if (constantCandidates == null) {
+            if (contextRoot == null) {
+                return ConstantCandidates.NONE;
+            }
+            constantCandidates = ConstantCandidates.of(contextRoot);
+        }
+        return constantCandidates;
+    }
+
+    /** The functions of the program that may be called without a subshell.  None before the first visit. */
+    public @Nonnull PureFunctions getPureFunctions() {
+        if (pureFunctions == null) {
+            if (contextRoot == null) {
+                return PureFunctions.NONE;
+            }
+            pureFunctions = PureFunctions.of(contextRoot, getFunctionDeclarationIndex());
+        }
+        return pureFunctions;
+    }
+
+    /** The functions of the program that are translated at their call sites.  None before the first visit. */
+    public @Nonnull InlineFunctions getInlineFunctions() {
+        if (inlineFunctions == null) {
+            if (contextRoot == null) {
+                return InlineFunctions.NONE;
+            }
+            inlineFunctions = InlineFunctions.of(getFunctionDeclarationIndex(), getPureFunctions());
+        }
+        return inlineFunctions;
+    }
+
+    /** What of the program can be left out of the translation.  Nothing before the first visit. */
+    public @Nonnull DeadCode getDeadCode() {
+        if (deadCode == null) {
+            if (contextRoot == null) {
+                return DeadCode.NONE;
+            }
+            deadCode = DeadCode.of(contextRoot, getInlineFunctions());
+        }
+        return deadCode;
+    }
+
     // visitors
 
+    /**
+     * Translates the whole program.
+     *
+     * @return The translation, or {@link Translation#EMPTY_TRANSLATION} if it was written to the output.
+     */
     @Override
     public @Nonnull Translation visitProgram(@Nonnull final BashpileParser.ProgramContext ctx) {
         // save root for later usage
         contextRoot = ctx;
+        functionDeclarationIndex = null;
+        constantCandidates = null;
+        pureFunctions = null;
+        inlineFunctions = null;
+        deadCode = null;
 
-        final Translation statementTranslation = ctx.statement().stream()
-                .map(this::visit)
-                .map(Translation::assertEmptyPreamble)
-                .reduce(Translation::add)
-                .orElseThrow();
+        final Translation headers = translator.originHeader()
+                .add(translator.strictModeHeader())
+                .add(translator.importsHeaders());
+        if (output != null) {
+            emit(headers);
+            visitStatements(ctx, this::emit);
+            return Translation.EMPTY_TRANSLATION;
+        }
 
         // add header, libs and statements
-        return translator.originHeader()
-                .add(translator.strictModeHeader())
-                .add(translator.importsHeaders())
-                .add(statementTranslation);
+        final List<Translation> statements = new ArrayList<>(ctx.statement().size());
+        visitStatements(ctx, statements::add);
+        return headers.add(statements.stream().reduce(Translation::add).orElseThrow());
+    }
+
+    /** Translates each top-level statement in order and hands it to sink */
+    private void visitStatements(
+            @Nonnull final BashpileParser.ProgramContext ctx, @Nonnull final Consumer<Translation> sink) {
+        if (statementCache != null) {
+            visitStatementsIncrementally(ctx, statementCache, sink);
+        } else {
+            ctx.statement().stream()
+                    .map(this::visit)
+                    .map(Translation::assertEmptyPreamble)
+                    .forEach(sink);
+        }
+    }
+
+    /**
+     * Reuses the translations of unchanged top-level statements and saves the new ones.
+     * The engine's state is only restored when a statement after reused ones has to be translated.
+     */
+    private void visitStatementsIncrementally(
+            @Nonnull final BashpileParser.ProgramContext ctx,
+            @Nonnull final StatementCache cache,
+            @Nonnull final Consumer<Translation> sink) {
+        final StatementCache.Program program = new StatementCache.Program(getConstantCandidates().names(),
+                getPureFunctions().names(), getInlineFunctions().bodies(), getDeadCode());
+        final Map<StatementCache.Key, StatementCache.Entry> previous = cache.entriesFor(program);
+        final Map<StatementCache.Key, StatementCache.Entry> latest = HashMap.newHashMap(ctx.statement().size());
+        final boolean renumberable = StatementCache.renumberable(ctx.start.getInputStream());
+        EngineState state = translator.getState();
+        boolean translatorAtState = true;
+        int reused = 0;
+        for (final BashpileParser.StatementContext statement : ctx.statement()) {
+            // the inlined functions' line numbers are in the comments at the call sites
+            final List<ParserRuleContext> dependencies = new ArrayList<>(getInlineFunctions().calledBy(statement));
+            if (statement instanceof BashpileParser.FunctionForwardDeclarationStatementContext forwardDeclaration) {
+                final ParserRuleContext hoisted = getFunctionDeclCtx(this, forwardDeclaration);
+                dependencies.add(hoisted);
+                dependencies.addAll(getInlineFunctions().calledBy(hoisted));
+            } else if (statement instanceof BashpileParser.PrintStatementContext print) {
+                // adjacent prints are translated together
+                dependencies.addAll(PrintCoalescing.neighbors(print));
+            }
+            final StatementCache.Key key = StatementCache.key(statement, dependencies, state, renumberable);
+            final StatementCache.Position position = StatementCache.Position.of(statement, state);
+            StatementCache.Entry entry = previous.get(key);
+            if (entry != null) {
+                entry = entry.moveTo(position);
+                translatorAtState = false;
+                reused++;
+            } else {
+                if (!translatorAtState) {
+                    translator.setState(state);
+                    translatorAtState = true;
+                }
+                entry = new StatementCache.Entry(
+                        visit(statement).assertEmptyPreamble(), translator.getState(), position);
+            }
+            state = entry.after();
+            latest.put(key, entry);
+            sink.accept(entry.translation());
+        }
+        if (!translatorAtState) {
+            translator.setState(state);
+        }
+        cache.replaceAll(program, latest);
+        log.info("Reused {} of {} statement translations", reused, ctx.statement().size());
+    }
+
+    /** Writes translation to the output */
+    private void emit(@Nonnull final Translation translation) {
+        try {
+            translation.assertEmptyPreamble().writeBody(Objects.requireNonNull(output));
+        } catch (IOException e) {
+            throw new BashpileUncheckedException(e);
+        }
     }
 
     // visit statements
@@ -0,0 +1,82 @@
+package com.bashpile.engine;
+
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The variables of a program that may be replaced by their values: each is declared once, by an assignment, is never
+ * reassigned and doesn't appear in any shell string or inline, which could assign it behind our back.
+ * Built in one pass over the parse tree.  Whether the assigned value is a constant is up to the translation engine.
+ */
+public class ConstantCandidates {
+
+    /** For when there is no program */
+    public static final ConstantCandidates NONE = new ConstantCandidates(Set.of());
+
+    /** Indexes the variables under root */
+    public static @Nonnull ConstantCandidates of(@Nonnull final ParserRuleContext root) {
+        final Map<String, Integer> declarations = new HashMap<>();
+        final Set<String> assigned = new HashSet<>();
+        final Set<String> reassigned = new HashSet<>();
+        final StringBuilder shellText = new StringBuilder();
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.AssignmentStatementContext assignment && assignment.expression() != null) {
+                assigned.add(assignment.typedId().Id().getText());
+            } else if (tree instanceof BashpileParser.ReassignmentStatementContext reassignment) {
+                reassigned.add(reassignment.Id().getText());
+            } else if (tree instanceof BashpileParser.ShellStringContext || tree instanceof BashpileParser.InlineContext) {
+                // nested shell strings and inlines are in the text already
+                shellText.append(tree.getText()).append('\n');
+                continue;
+            }
+            if (tree instanceof BashpileParser.TypedIdContext typedId) {
+                declarations.merge(typedId.Id().getText(), 1, Integer::sum);
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+
+        final Set<String> names = new HashSet<>();
+        for (final String name : assigned) {
+            if (declarations.get(name) == 1 && !reassigned.contains(name)
+                    && !Pattern.compile("(?<!\\w)%s(?!\\w)".formatted(name)).matcher(shellText).find()) {
+                names.add(name);
+            }
+        }
+        return new ConstantCandidates(names);
+    }
+
+    @Nonnull
+    private final Set<String> names;
+
+    private ConstantCandidates(@Nonnull final Set<String> names) {
+        this.names = Set.copyOf(names);
+    }
+
+    /** True if the variable may be replaced by its value */
+    public boolean contains(@Nonnull final String variableName) {
+        return names.contains(variableName);
+    }
+
+    /** All the candidates, in no particular order */
+    public @Nonnull Set<String> names() {
+        return names;
+    }
+}
@@ -0,0 +1,125 @@
+package com.bashpile.engine;
+
+import com.bashpile.engine.strongtypes.Type;
+
+import javax.annotation.Nonnull;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Optional;
+
+/**
+ * Evaluates calculations on literals at compile time, with the same results that Bash's arithmetic or
+ * <code>bc</code> would give at runtime.
+ */
+public class ConstantFolding {
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    /**
+     * Calculates <code>left op right</code> when both are literals.
+     *
+     * @param left A translation body, e.g. <code>1.5</code> or <code>(-2)</code>.
+     * @param op One of <code>* / + -</code>.
+     * @param right A translation body.
+     * @param integers When true the calculation is done like Bash's 64-bit arithmetic, otherwise like <code>bc</code>
+     *  with its default scale of 0.
+     * @param nested When true the result is for an enclosing calculation, so it keeps every digit of its scale and a
+     *  negative result is in parenthesis.  Otherwise it is formatted like the output of <code>bc</code>.
+     * @return The result, or empty if either side isn't a literal or the calculation would fail at runtime.
+     */
+    public static @Nonnull Optional<String> fold(
+            @Nonnull final String left,
+            @Nonnull final String op,
+            @Nonnull final String right,
+            final boolean integers,
+            final boolean nested) {
+        final Optional<String> leftLiteral = literal(left);
+        final Optional<String> rightLiteral = literal(right);
+        if (leftLiteral.isEmpty() || rightLiteral.isEmpty()) {
+            return Optional.empty();
+        }
+        if (integers) {
+            // e.g. an int variable that was assigned a float calculation
+            if (Type.parseNumberString(leftLiteral.get()) != Type.INT
+                    || Type.parseNumberString(rightLiteral.get()) != Type.INT) {
+                return Optional.empty();
+            }
+            return foldIntegers(new BigInteger(leftLiteral.get()), op, new BigInteger(rightLiteral.get()))
+                    .map(result -> nested && result.signum() < 0 ? "(%s)".formatted(result) : result.toString());
+        }
+        return foldDecimals(new BigDecimal(leftLiteral.get()), op, new BigDecimal(rightLiteral.get()))
+                .map(result -> nested ? nestedText(result) : bcText(result));
+    }
+
+    // helpers
+
+    /** The number in body, without any parenthesis around it */
+    private static @Nonnull Optional<String> literal(@Nonnull final String body) {
+        String ret = body;
+        while (ret.startsWith("(") && ret.endsWith(")")) {
+            ret = ret.substring(1, ret.length() - 1);
+        }
+        return Type.isNumberString(ret) ? Optional.of(ret) : Optional.empty();
+    }
+
+    /** Like Bash, or empty on a division by zero or on overflow, which Bash wraps around */
+    private static @Nonnull Optional<BigInteger> foldIntegers(
+            @Nonnull final BigInteger left, @Nonnull final String op, @Nonnull final BigInteger right) {
+        if (op.equals("/") && right.signum() == 0) {
+            return Optional.empty();
+        }
+        // BigInteger division also truncates toward zero
+        final BigInteger ret = switch (op) {
+            case "*" -> left.multiply(right);
+            case "/" -> left.divide(right);
+            case "+" -> left.add(right);
+            case "-" -> left.subtract(right);
+            default -> null;
+        };
+        if (ret == null || ret.compareTo(LONG_MIN) < 0 || ret.compareTo(LONG_MAX) > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(ret);
+    }
+
+    /**
+     * Like <code>bc</code> with a scale of 0.  Addition and subtraction keep the larger scale, multiplication keeps
+     * the larger scale of the operands and division truncates to an integer.
+     */
+    private static @Nonnull Optional<BigDecimal> foldDecimals(
+            @Nonnull final BigDecimal left, @Nonnull final String op, @Nonnull final BigDecimal right) {
+        return switch (op) {
+            case "*" -> Optional.of(left.multiply(right).setScale(
+                    Math.min(left.scale() + right.scale(), Math.max(left.scale(), right.scale())), RoundingMode.DOWN));
+            case "/" -> right.signum() != 0
+                    ? Optional.of(left.divide(right, 0, RoundingMode.DOWN))
+                    : Optional.empty();
+            case "+" -> Optional.of(left.add(right));
+            case "-" -> Optional.of(left.subtract(right));
+            default -> Optional.empty();
+        };
+    }
+
+    /** Keeps the scale, as bc does for intermediate results */
+    private static @Nonnull String nestedText(@Nonnull final BigDecimal result) {
+        final String ret = result.toPlainString();
+        return result.signum() < 0 ? "(%s)".formatted(ret) : ret;
+    }
+
+    /** As bc prints it, e.g. <code>.5</code> and <code>-.5</code> without a zero before the point, and zero as 0 */
+    private static @Nonnull String bcText(@Nonnull final BigDecimal result) {
+        if (result.signum() == 0) {
+            return "0";
+        }
+        final String ret = result.toPlainString();
+        if (ret.startsWith("0.")) {
+            return ret.substring(1);
+        } else if (ret.startsWith("-0.")) {
+            return "-" + ret.substring(2);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,183 @@
+package com.bashpile.engine;
+
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * What of a program can be left out of the translation.  It is still translated, so it is still type checked.
+ *
+ * @param unreachableFunctions The functions that aren't called from the top level or from another reachable function
+ *                             and aren't mentioned in a shell string or inline.  A call that is inlined isn't a call.
+ * @param deadVariables The variables that are never read, not mentioned in a shell string or inline and are only
+ *                      assigned expressions without side effects.
+ * @param exportsRead True if the program runs commands, which may read the exported (top level) variables.
+ */
+public record DeadCode(
+        @Nonnull Set<String> unreachableFunctions,
+        @Nonnull Set<String> deadVariables,
+        boolean exportsRead) {
+
+    /** For when there is no program, nothing is dead */
+    public static final DeadCode NONE = new DeadCode(Set.of(), Set.of(), true);
+
+    /** Finds the dead code under root */
+    public static @Nonnull DeadCode of(
+            @Nonnull final ParserRuleContext root, @Nonnull final InlineFunctions inlineFunctions) {
+        final Map<String, BashpileParser.FunctionDeclarationStatementContext> declarations = new HashMap<>();
+        final Set<String> read = new HashSet<>();
+        final Set<String> written = new HashSet<>();
+        final Set<String> writtenWithSideEffects = new HashSet<>();
+        final StringBuilder shellText = new StringBuilder();
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.FunctionDeclarationStatementContext decl) {
+                declarations.putIfAbsent(decl.typedId().Id().getText(), decl);
+            } else if (tree instanceof BashpileParser.AssignmentStatementContext assignment) {
+                final String name = assignment.typedId().Id().getText();
+                written.add(name);
+                if (assignment.expression() != null && hasSideEffects(assignment.expression())) {
+                    writtenWithSideEffects.add(name);
+                }
+            } else if (tree instanceof BashpileParser.ReassignmentStatementContext reassignment) {
+                written.add(reassignment.Id().getText());
+                if (hasSideEffects(reassignment.expression())) {
+                    writtenWithSideEffects.add(reassignment.Id().getText());
+                }
+            } else if (tree instanceof BashpileParser.IdExpressionContext id) {
+                read.add(id.Id().getText());
+            } else if (tree instanceof BashpileParser.CreatesStatementContext creates && creates.Id() != null) {
+                read.add(creates.Id().getText());
+            } else if (tree instanceof BashpileParser.ShellStringContext || tree instanceof BashpileParser.InlineContext) {
+                // nested shell strings and inlines are in the text already
+                shellText.append(tree.getText()).append('\n');
+                continue;
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+
+        // anything a command may run or expand is used
+        final Set<String> mentioned = new HashSet<>();
+        for (final String name : union(declarations.keySet(), written)) {
+            if (Pattern.compile("(?<!\\w)%s(?!\\w)".formatted(name)).matcher(shellText).find()) {
+                mentioned.add(name);
+            }
+        }
+
+        // the top level and then each function that is called
+        final Set<String> reachable = new HashSet<>(mentioned);
+        reachable.retainAll(declarations.keySet());
+        final Deque<ParserRuleContext> toVisit = new ArrayDeque<>(List.of(root));
+        reachable.forEach(name -> toVisit.push(declarations.get(name).functionBlock()));
+        while (!toVisit.isEmpty()) {
+            for (final BashpileParser.FunctionCallExpressionContext call : findCalls(toVisit.pop())) {
+                final String name = call.Id().getText();
+                final BashpileParser.FunctionDeclarationStatementContext decl = declarations.get(name);
+                final boolean statement = call.getParent() instanceof BashpileParser.ExpressionStatementContext;
+                if (decl == null) {
+                    continue;
+                } else if (!statement && inlineFunctions.find(name).isPresent()) {
+                    // the body is translated at the call site, so what it calls is called from here
+                    toVisit.push(decl.functionBlock());
+                } else if (reachable.add(name)) {
+                    toVisit.push(decl.functionBlock());
+                }
+            }
+        }
+
+        final Set<String> dead = new HashSet<>(written);
+        dead.removeAll(read);
+        dead.removeAll(mentioned);
+        dead.removeAll(writtenWithSideEffects);
+        final Set<String> unreachable = new HashSet<>(declarations.keySet());
+        unreachable.removeAll(reachable);
+        return new DeadCode(Set.copyOf(unreachable), Set.copyOf(dead), !shellText.isEmpty());
+    }
+
+    /** True if the function is translated */
+    public boolean isReachable(@Nonnull final String functionName) {
+        return !unreachableFunctions.contains(functionName);
+    }
+
+    /**
+     * True if the assignments to the variable can be left out.
+     *
+     * @param exported True for a top level variable.
+     */
+    public boolean isDeadStore(@Nonnull final String variableName, final boolean exported) {
+        return deadVariables.contains(variableName) && !(exported && exportsRead);
+    }
+
+    // helpers
+
+    /**
+     * True if evaluating expression may do more than give a value.  Calls, shell strings and inlines may do anything
+     * and a division may fail.
+     */
+    private static boolean hasSideEffects(@Nonnull final BashpileParser.ExpressionContext expression) {
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.FunctionCallExpressionContext
+                    || tree instanceof BashpileParser.ShellStringContext
+                    || tree instanceof BashpileParser.InlineContext
+                    || tree instanceof BashpileParser.CalculationExpressionContext calc
+                            && calc.op.getType() == BashpileParser.Divide) {
+                return true;
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** The calls under root, but not in the functions declared under it */
+    private static @Nonnull List<BashpileParser.FunctionCallExpressionContext> findCalls(
+            @Nonnull final ParserRuleContext root) {
+        final List<BashpileParser.FunctionCallExpressionContext> ret = new ArrayList<>();
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.FunctionCallExpressionContext call) {
+                ret.add(call);
+            } else if (tree instanceof BashpileParser.FunctionDeclarationStatementContext && tree != root) {
+                continue;
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static @Nonnull Set<String> union(@Nonnull final Set<String> first, @Nonnull final Set<String> second) {
+        final Set<String> ret = new HashSet<>(first);
+        ret.addAll(second);
+        return ret;
+    }
+}
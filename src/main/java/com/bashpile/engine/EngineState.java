@@ -0,0 +1,40 @@
+package com.bashpile.engine;
+
+import com.bashpile.engine.strongtypes.TypeStack;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+
+/**
+ * Everything that the translation of a top-level statement depends on, besides the statement itself and the
+ * {@link StatementCache.Program} analyses.  Immutable and O(1) to take, each part is a {@link StateLog.Checkpoint}.
+ * Equal fingerprints, and equal statements, translate the same except for the counters in the generated names, which
+ * {@link StatementCache.Entry#moveTo(StatementCache.Position)} renumbers.
+ *
+ * @param typeStack A {@link TypeStack#checkpoint()}.
+ * @param anonBlockCounter The next anonymous block number.
+ * @param subshellWorkaroundCounter The next unnest variable number.
+ * @param foundForwardDeclarations The functions already hoisted.
+ * @param constants The values of the constants assigned so far, by variable name.
+ * @see StatementCache
+ */
+public record EngineState(
+        @Nonnull StateLog.Checkpoint<TypeStack.Put> typeStack,
+        int anonBlockCounter,
+        int subshellWorkaroundCounter,
+        @Nonnull StateLog.Checkpoint<String> foundForwardDeclarations,
+        @Nonnull StateLog.Checkpoint<Map.Entry<String, String>> constants) {
+
+    /** Identifies the state, except for the counters, O(1) */
+    public long fingerprint() {
+        long ret = typeStack.fingerprint();
+        ret = StateLog.fold(ret, foundForwardDeclarations.fingerprint());
+        return StateLog.fold(ret, constants.fingerprint());
+    }
+
+    /** This state with more (or fewer) anonymous blocks and subshell workarounds before it */
+    public @Nonnull EngineState renumber(final int anonBlocks, final int subshellWorkarounds) {
+        return new EngineState(typeStack, anonBlockCounter + anonBlocks,
+                subshellWorkaroundCounter + subshellWorkarounds, foundForwardDeclarations, constants);
+    }
+}
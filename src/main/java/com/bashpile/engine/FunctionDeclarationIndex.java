@@ -0,0 +1,81 @@
+package com.bashpile.engine;
+
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The function declarations of a program, including ones nested in blocks, by name and parameter names.
+ * Built in one pass over the parse tree so that each forward declaration is resolved in O(1).
+ *
+ * @see com.bashpile.AntlrUtils#getFunctionDeclCtx(BashpileVisitor, BashpileParser.FunctionForwardDeclarationStatementContext)
+ */
+public class FunctionDeclarationIndex {
+
+    /** Indexes every function declaration under root.  When a signature is declared twice the first one is kept. */
+    public static @Nonnull FunctionDeclarationIndex of(@Nonnull final ParserRuleContext root) {
+        final Map<Signature, BashpileParser.FunctionDeclarationStatementContext> declarations = new LinkedHashMap<>();
+        // depth first and in source order, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.FunctionDeclarationStatementContext decl) {
+                declarations.putIfAbsent(Signature.of(decl.typedId().Id().getText(), decl.paramaters()), decl);
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return new FunctionDeclarationIndex(declarations);
+    }
+
+    @Nonnull
+    private final Map<Signature, BashpileParser.FunctionDeclarationStatementContext> declarations;
+
+    private FunctionDeclarationIndex(
+            @Nonnull final Map<Signature, BashpileParser.FunctionDeclarationStatementContext> declarations) {
+        this.declarations = Collections.unmodifiableMap(declarations);
+    }
+
+    /** Finds the declaration with this name and the same parameter names */
+    public @Nonnull Optional<BashpileParser.FunctionDeclarationStatementContext> find(
+            @Nonnull final String functionName, @Nonnull final BashpileParser.ParamatersContext paramaters) {
+        return Optional.ofNullable(declarations.get(Signature.of(functionName, paramaters)));
+    }
+
+    /** All the indexed declarations in source order */
+    public @Nonnull Collection<BashpileParser.FunctionDeclarationStatementContext> all() {
+        return declarations.values();
+    }
+
+    /**
+     * What a forward declaration must match.  Types aren't part of it, the type checks report mismatches.
+     *
+     * @param name The function name.
+     * @param paramIds The parameter names in order.
+     */
+    public record Signature(@Nonnull String name, @Nonnull List<String> paramIds) {
+
+        /** Creates the signature from the parameters of a declaration or forward declaration */
+        public static @Nonnull Signature of(
+                @Nonnull final String name, @Nonnull final BashpileParser.ParamatersContext paramaters) {
+            final List<String> paramIds = paramaters.typedId().stream()
+                    .map(typedId -> typedId.Id().getText())
+                    .toList();
+            return new Signature(name, paramIds);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.bashpile.engine;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import static com.bashpile.engine.BashTranslationEngine.TAB;
+
+/**
+ * Indents lines as they are written, so nested blocks are indented once on the way out instead of once per level.
+ * <br>
+ * Text between {@link #indent()} and {@link #outdent()} is written like <code>AntlrUtils.visitBlock</code> used to
+ * write a statement: every line gets a {@link BashTranslationEngine#TAB} and ends with a '\n', trailing empty lines
+ * are dropped and an empty statement becomes an indented empty line.  Indented text must start at the start of a
+ * line.
+ * <br>
+ * Blank lines are held back until we know that they aren't trailing, so an indent never needs more memory than its
+ * run of blank lines.  Not thread safe.
+ */
+/* package */ final class IndentingWriter extends Writer {
+
+    @Nonnull
+    private final Writer out;
+
+    /** How many indents are open */
+    private int depth = 0;
+
+    /** The depths of the blank lines held back, outermost first */
+    private int[] heldBlankLines = new int[8];
+
+    private int heldBlankLineCount = 0;
+
+    /** By depth, has anything been written since that indent was opened? */
+    private boolean[] wroteText = new boolean[8];
+
+    /** By depth, has anything but newlines been written since that indent was opened? */
+    private boolean[] wroteLine = new boolean[8];
+
+    /** Is the next character the first of a line? */
+    private boolean atLineStart = true;
+
+    /* package */ IndentingWriter(@Nonnull final Writer out) {
+        this.out = out;
+    }
+
+    /** Starts indenting the following lines one more level */
+    /* package */ void indent() {
+        depth++;
+        if (depth == wroteText.length) {
+            wroteText = Arrays.copyOf(wroteText, depth * 2);
+            wroteLine = Arrays.copyOf(wroteLine, depth * 2);
+        }
+        wroteText[depth] = false;
+        wroteLine[depth] = false;
+    }
+
+    /** Ends the last {@link #indent()} */
+    /* package */ void outdent() throws IOException {
+        if (depth == 0) {
+            throw new IllegalStateException("outdent without indent");
+        }
+        // trailing blank lines are dropped
+        while (heldBlankLineCount > 0 && heldBlankLines[heldBlankLineCount - 1] == depth) {
+            heldBlankLineCount--;
+        }
+        final boolean empty = !wroteText[depth];
+        if (empty) {
+            // an empty statement is an indented empty line
+            startLine();
+            out.write('\n');
+            atLineStart = true;
+        } else if (!atLineStart) {
+            out.write('\n');
+            atLineStart = true;
+        }
+        // an indent of only blank lines writes nothing
+        final boolean wroteLines = empty || wroteLine[depth];
+        depth--;
+        wroteText[depth] |= wroteLines;
+        wroteLine[depth] |= wroteLines;
+    }
+
+    @Override
+    public void write(@Nonnull final char[] chars, final int offset, final int length) throws IOException {
+        final int end = offset + length;
+        int start = offset;
+        while (start < end) {
+            wroteText[depth] = true;
+            if (chars[start] == '\n') {
+                if (!atLineStart) {
+                    out.write('\n');
+                    atLineStart = true;
+                } else if (depth == 0) {
+                    out.write('\n');
+                } else {
+                    holdBlankLine();
+                }
+                start++;
+                continue;
+            }
+            int lineEnd = start;
+            while (lineEnd < end && chars[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (atLineStart) {
+                startLine();
+            }
+            wroteLine[depth] = true;
+            out.write(chars, start, lineEnd - start);
+            start = lineEnd;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    // helpers
+
+    private void holdBlankLine() {
+        if (heldBlankLineCount == heldBlankLines.length) {
+            heldBlankLines = Arrays.copyOf(heldBlankLines, heldBlankLineCount * 2);
+        }
+        heldBlankLines[heldBlankLineCount++] = depth;
+    }
+
+    /** Writes the held blank lines, which aren't trailing after all, and then the indent of the new line */
+    private void startLine() throws IOException {
+        for (int i = 0; i < heldBlankLineCount; i++) {
+            out.write(TAB.repeat(heldBlankLines[i]));
+            out.write('\n');
+        }
+        heldBlankLineCount = 0;
+        out.write(TAB.repeat(depth));
+        atLineStart = false;
+    }
+}
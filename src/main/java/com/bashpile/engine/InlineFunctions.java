@@ -0,0 +1,167 @@
+package com.bashpile.engine;
+
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The functions of a program that are translated at their call sites instead of called.  Each is a {@link PureFunctions}
+ * with at most {@link #STATEMENT_LIMIT} statements, all assignments besides the return, only uses its own parameters
+ * and variables, isn't tagged <code>"noinline"</code> and only calls other functions that are inlined.  So none are
+ * recursive, and renaming their variables doesn't change what Bash's dynamic scoping would find.
+ */
+public class InlineFunctions {
+
+    /** The most statements, counting the return, of an inlined function */
+    public static final int STATEMENT_LIMIT = 3;
+
+    /** The tag that keeps a function from being inlined */
+    public static final String NO_INLINE_TAG = "noinline";
+
+    /** For when there is no program */
+    public static final InlineFunctions NONE = new InlineFunctions(Map.of());
+
+    /** Finds the functions to inline among the pure functions */
+    public static @Nonnull InlineFunctions of(
+            @Nonnull final FunctionDeclarationIndex index, @Nonnull final PureFunctions pureFunctions) {
+        // the functions each candidate calls
+        final Map<String, Set<String>> calls = new HashMap<>();
+        final Map<String, BashpileParser.FunctionDeclarationStatementContext> candidates = new HashMap<>();
+        for (final BashpileParser.FunctionDeclarationStatementContext decl : index.all()) {
+            final String name = decl.typedId().Id().getText();
+            if (pureFunctions.contains(name) && isSmall(decl) && !isTaggedNoInline(decl)) {
+                findCalls(decl).ifPresent(found -> {
+                    calls.put(name, found);
+                    candidates.put(name, decl);
+                });
+            }
+        }
+
+        // a function is added once all it calls are in, so functions calling themselves never are
+        final Map<String, BashpileParser.FunctionDeclarationStatementContext> inlined = new HashMap<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (final Map.Entry<String, Set<String>> entry : calls.entrySet()) {
+                if (!inlined.containsKey(entry.getKey()) && inlined.keySet().containsAll(entry.getValue())) {
+                    inlined.put(entry.getKey(), candidates.get(entry.getKey()));
+                    changed = true;
+                }
+            }
+        }
+        return new InlineFunctions(inlined);
+    }
+
+    @Nonnull
+    private final Map<String, BashpileParser.FunctionDeclarationStatementContext> declarations;
+
+    private InlineFunctions(
+            @Nonnull final Map<String, BashpileParser.FunctionDeclarationStatementContext> declarations) {
+        this.declarations = Map.copyOf(declarations);
+    }
+
+    /** The declaration to translate at the call site, or empty if the function is called */
+    public @Nonnull Optional<BashpileParser.FunctionDeclarationStatementContext> find(
+            @Nonnull final String functionName) {
+        return Optional.ofNullable(declarations.get(functionName));
+    }
+
+    /**
+     * What each call site of the inlined functions depends on, besides the lines of the declarations.
+     *
+     * @return The text of each declaration, by function name.
+     * @see #calledBy(ParserRuleContext)
+     */
+    public @Nonnull Map<String, String> bodies() {
+        final Map<String, String> ret = new HashMap<>();
+        declarations.forEach((name, decl) -> ret.put(name, decl.getText()));
+        return Map.copyOf(ret);
+    }
+
+    /**
+     * The declarations that are translated into root, including those that the inlined functions call.
+     * A call site has the line numbers of the declaration in its comments.
+     *
+     * @return The declarations in the order of their first call.
+     */
+    public @Nonnull List<BashpileParser.FunctionDeclarationStatementContext> calledBy(
+            @Nonnull final ParserRuleContext root) {
+        if (declarations.isEmpty()) {
+            return List.of();
+        }
+        final Set<BashpileParser.FunctionDeclarationStatementContext> ret = new LinkedHashSet<>();
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.FunctionCallExpressionContext call) {
+                find(call.Id().getText()).filter(ret::add).ifPresent(stack::push);
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return List.copyOf(ret);
+    }
+
+    // helpers
+
+    private static boolean isSmall(@Nonnull final BashpileParser.FunctionDeclarationStatementContext decl) {
+        final BashpileParser.FunctionBlockContext block = decl.functionBlock();
+        return block.statement().size() + 1 <= STATEMENT_LIMIT && block.statement().stream().allMatch(stmt ->
+                stmt instanceof BashpileParser.AssignmentStatementContext
+                        || stmt instanceof BashpileParser.ReassignmentStatementContext);
+    }
+
+    private static boolean isTaggedNoInline(@Nonnull final BashpileParser.FunctionDeclarationStatementContext decl) {
+        return decl.tags() != null && decl.tags().String().stream()
+                .map(TerminalNode::getText)
+                .anyMatch(tag -> tag.equals("\"%s\"".formatted(NO_INLINE_TAG)));
+    }
+
+    /** The names of the functions called by decl, or empty if the body uses a variable it didn't declare */
+    private static @Nonnull Optional<Set<String>> findCalls(
+            @Nonnull final BashpileParser.FunctionDeclarationStatementContext decl) {
+        final Set<String> declared = new HashSet<>();
+        final Set<String> used = new HashSet<>();
+        final Set<String> called = new HashSet<>();
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        decl.paramaters().typedId().forEach(typedId -> declared.add(typedId.Id().getText()));
+        stack.push(decl.functionBlock());
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.TypedIdContext typedId) {
+                declared.add(typedId.Id().getText());
+            } else if (tree instanceof BashpileParser.IdExpressionContext id) {
+                used.add(id.Id().getText());
+            } else if (tree instanceof BashpileParser.InlineContext) {
+                // may expand any variable
+                return Optional.empty();
+            } else if (tree instanceof BashpileParser.FunctionCallExpressionContext call) {
+                called.add(call.Id().getText());
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return declared.containsAll(used) ? Optional.of(called) : Optional.empty();
+    }
+}
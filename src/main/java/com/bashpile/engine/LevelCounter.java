@@ -3,11 +3,15 @@ package com.bashpile.engine;
 import javax.annotation.Nonnull;
 import java.io.Closeable;
 import java.util.HashMap;
+import java.util.Map;
 
-/** All instances of the same label share static data */
-public class LevelCounter implements Closeable {
+/**
+ * Counts how many levels deep we are for each label.  Each translation engine has its own, so translations can run
+ * concurrently.  Not thread safe.
+ */
+public class LevelCounter {
 
-    // static constants and variables
+    // static constants
 
     /** A label for changing lexical scopes */
     public static final String BLOCK_LABEL = "block";
@@ -24,53 +28,93 @@ public class LevelCounter implements Closeable {
     /** LevelCounter label */
     public static final String PRINT_LABEL = "print";
 
-    private static final HashMap<String, Integer> counters = HashMap.newHashMap(20);
+    /** A label for typecasts, which check the type of what was written and not of its value */
+    public static final String TYPECAST_LABEL = "typecast";
 
-    // static methods
+    // class fields and methods
+
+    private final HashMap<String, Integer> counters = HashMap.newHashMap(20);
 
     /** are we in any level of indention for this label */
-    public static boolean in(@Nonnull final String name) {
+    public boolean in(@Nonnull final String name) {
         return counters.containsKey(name);
     }
 
     /** Are we in anything implemented with a Bash Command Substitution? */
-    public static boolean inCommandSubstitution() {
+    public boolean inCommandSubstitution() {
         return in(CALC_LABEL) || in(INLINE_LABEL) || in(FORWARD_DECL_LABEL);
     }
 
     /** How many levels are we in any label implemented with a Bash command line substitution? */
-    public static int getCommandSubstitution() {
+    public int getCommandSubstitution() {
         return get(CALC_LABEL) + get(INLINE_LABEL) + get(FORWARD_DECL_LABEL);
     }
 
     /** How many levels are we in for label? */
-    public static int get(@Nonnull final String label) {
+    public int get(@Nonnull final String label) {
         return counters.getOrDefault(label, 0);
     }
 
-    // class fields, constructors and methods
+    /**
+     * Goes one level deeper into label.  Use in a try-with-resources block.
+     *
+     * @return Closing this goes back up a level.
+     */
+    public @Nonnull Level enter(@Nonnull final String label) {
+        counters.merge(label, 1, Integer::sum);
+        return new Level(label);
+    }
+
+    /**
+     * Leaves every level of the labels until closed, e.g. to translate a statement from within an expression.
+     * Use in a try-with-resources block.
+     *
+     * @return Closing this goes back into the levels.
+     */
+    public @Nonnull Suspension suspend(@Nonnull final String... labels) {
+        final Map<String, Integer> suspended = new HashMap<>();
+        for (final String label : labels) {
+            final Integer count = counters.remove(label);
+            if (count != null) {
+                suspended.put(label, count);
+            }
+        }
+        return new Suspension(suspended);
+    }
+
+    /** One level of a label, see {@link #enter(String)} */
+    public class Level implements Closeable {
 
-    private final String label;
+        private final String label;
 
-    public LevelCounter(@Nonnull final String label) {
-        this.label = label;
-        if (counters.containsKey(label)) {
-            // increment
-            counters.put(label, counters.get(label) + 1);
-        } else {
-            counters.put(label, 1);
+        private Level(@Nonnull final String label) {
+            this.label = label;
         }
 
+        @Override
+        public void close() {
+            int count = counters.get(label);
+            count--;
+            if (count <= 0) {
+                counters.remove(label);
+            } else {
+                counters.put(label, count);
+            }
+        }
     }
 
-    @Override
-    public void close() {
-        int count = counters.get(label);
-        count--;
-        if (count <= 0) {
-            counters.remove(label);
-        } else {
-            counters.put(label, count);
+    /** Suspended labels, see {@link #suspend(String...)} */
+    public class Suspension implements Closeable {
+
+        private final Map<String, Integer> suspended;
+
+        private Suspension(@Nonnull final Map<String, Integer> suspended) {
+            this.suspended = suspended;
+        }
+
+        @Override
+        public void close() {
+            counters.putAll(suspended);
         }
     }
 }
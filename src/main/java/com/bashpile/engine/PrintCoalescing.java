@@ -0,0 +1,120 @@
+package com.bashpile.engine;
+
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Runs of adjacent print statements, which are translated to a single <code>printf</code> by the first print of the
+ * run.  A print only joins a run when expanding its arguments can't fail or do anything besides give a value, so
+ * nothing can happen between the prints either way: no calls, Shell Strings, Inlines, typecasts or divisions, and no
+ * calculations at all when they are sent to a <code>bc</code> coprocess.
+ * <br>
+ * Also finds where buffered output has to be written out, see {@link TranslationOptions#bufferOutput()}.
+ */
+public class PrintCoalescing {
+
+    /** True if ctx is translated by the print statement before it */
+    public static boolean isMergedIntoPrevious(
+            @Nonnull final BashpileParser.PrintStatementContext ctx, final boolean bcCoprocess) {
+        return sibling(ctx, indexOf(ctx) - 1) instanceof BashpileParser.PrintStatementContext
+                && isMergeable(ctx, bcCoprocess);
+    }
+
+    /** ctx and the print statements after it that it translates */
+    public static @Nonnull List<BashpileParser.PrintStatementContext> run(
+            @Nonnull final BashpileParser.PrintStatementContext ctx, final boolean bcCoprocess) {
+        final List<BashpileParser.PrintStatementContext> ret = new ArrayList<>(List.of(ctx));
+        final int index = indexOf(ctx);
+        while (sibling(ctx, index + ret.size()) instanceof BashpileParser.PrintStatementContext next
+                && isMergeable(next, bcCoprocess)) {
+            ret.add(next);
+        }
+        return ret;
+    }
+
+    /**
+     * The statements whose translation the translation of ctx may depend on: the one before it and the print
+     * statements after it.
+     */
+    public static @Nonnull List<ParserRuleContext> neighbors(@Nonnull final BashpileParser.PrintStatementContext ctx) {
+        final List<ParserRuleContext> ret = new ArrayList<>();
+        final int index = indexOf(ctx);
+        if (sibling(ctx, index - 1) instanceof ParserRuleContext previous) {
+            ret.add(previous);
+        }
+        for (int i = index + 1; sibling(ctx, i) instanceof BashpileParser.PrintStatementContext next; i++) {
+            ret.add(next);
+        }
+        return ret;
+    }
+
+    /**
+     * True if running ctx may write to standard output by other means than a print statement.  That is a Shell String,
+     * an Inline, a creates statement or a call to a function that isn't pure, which may print itself.
+     */
+    public static boolean mayWrite(@Nonnull final ParserRuleContext ctx, @Nonnull final PureFunctions pureFunctions) {
+        return contains(ctx, tree -> tree instanceof BashpileParser.ShellStringContext
+                || tree instanceof BashpileParser.InlineContext
+                || tree instanceof BashpileParser.CreatesStatementContext
+                || tree instanceof BashpileParser.FunctionCallExpressionContext call
+                        && !pureFunctions.contains(call.Id().getText()));
+    }
+
+    /** True if there is a print statement in ctx, outside any functions declared in it */
+    public static boolean containsPrint(@Nonnull final ParserRuleContext ctx) {
+        return contains(ctx, tree -> tree instanceof BashpileParser.PrintStatementContext);
+    }
+
+    // helpers
+
+    private static boolean isMergeable(
+            @Nonnull final BashpileParser.PrintStatementContext ctx, final boolean bcCoprocess) {
+        return !contains(ctx, tree -> tree instanceof BashpileParser.FunctionCallExpressionContext
+                || tree instanceof BashpileParser.ShellStringContext
+                || tree instanceof BashpileParser.InlineContext
+                || tree instanceof BashpileParser.TypecastExpressionContext
+                || tree instanceof BashpileParser.CalculationExpressionContext calc
+                        && (bcCoprocess || calc.op.getType() == BashpileParser.Divide));
+    }
+
+    /** Where ctx is among its parent's children, or -1 */
+    private static int indexOf(@Nonnull final ParserRuleContext ctx) {
+        return ctx.getParent() != null ? ctx.getParent().children.indexOf(ctx) : -1;
+    }
+
+    /** The child of ctx's parent at index, or null */
+    private static @Nullable ParseTree sibling(@Nonnull final ParserRuleContext ctx, final int index) {
+        final ParserRuleContext parent = ctx.getParent();
+        return parent != null && index >= 0 && index < parent.getChildCount() ? parent.getChild(index) : null;
+    }
+
+    /** True if any tree under root matches, skipping functions declared under root */
+    private static boolean contains(@Nonnull final ParserRuleContext root, @Nonnull final Predicate<ParseTree> matches) {
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (matches.test(tree)) {
+                return true;
+            } else if (tree instanceof BashpileParser.FunctionDeclarationStatementContext && tree != root) {
+                continue;
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return false;
+    }
+}
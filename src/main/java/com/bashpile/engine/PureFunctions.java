@@ -0,0 +1,127 @@
+package com.bashpile.engine;
+
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * The functions of a program that can be called without a subshell.  Each returns a value and doesn't print, create
+ * files, run shell strings, declare functions or reassign a variable it didn't declare, and only calls functions that
+ * are pure as well.  So running one in the caller's shell has no effect the subshell would have isolated.
+ * <br>
+ * A pure function returns its value in a variable instead of printing it, so one that is mentioned in any shell string
+ * or inline isn't pure.  The shell text may call it and read its output.
+ */
+public class PureFunctions {
+
+    /** For when there is no program */
+    public static final PureFunctions NONE = new PureFunctions(Set.of());
+
+    /** Finds the pure functions among the declarations of the program at root */
+    public static @Nonnull PureFunctions of(
+            @Nonnull final ParserRuleContext root, @Nonnull final FunctionDeclarationIndex index) {
+        // the functions each candidate calls
+        final Map<String, Set<String>> calls = new HashMap<>();
+        final String shellText = findShellText(root);
+        for (final BashpileParser.FunctionDeclarationStatementContext decl : index.all()) {
+            final String name = decl.typedId().Id().getText();
+            if (decl.functionBlock().returnPsudoStatement().expression() != null
+                    && !Pattern.compile("(?<!\\w)%s(?!\\w)".formatted(name)).matcher(shellText).find()) {
+                findCalls(decl).ifPresent(found -> calls.put(name, found));
+            }
+        }
+
+        // a function calling an impure one is impure, until nothing changes
+        final Set<String> names = new HashSet<>(calls.keySet());
+        boolean changed = true;
+        while (changed) {
+            changed = names.removeIf(name -> !names.containsAll(calls.get(name)));
+        }
+        return new PureFunctions(names);
+    }
+
+    @Nonnull
+    private final Set<String> names;
+
+    private PureFunctions(@Nonnull final Set<String> names) {
+        this.names = Set.copyOf(names);
+    }
+
+    /** True if calls to the function can skip the subshell */
+    public boolean contains(@Nonnull final String functionName) {
+        return names.contains(functionName);
+    }
+
+    /** All the pure functions, in no particular order */
+    public @Nonnull Set<String> names() {
+        return names;
+    }
+
+    // helpers
+
+    /** The text of all the shell strings and inlines under root, one per line */
+    private static @Nonnull String findShellText(@Nonnull final ParserRuleContext root) {
+        final StringBuilder shellText = new StringBuilder();
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.ShellStringContext || tree instanceof BashpileParser.InlineContext) {
+                // nested shell strings and inlines are in the text already
+                shellText.append(tree.getText()).append('\n');
+                continue;
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return shellText.toString();
+    }
+
+    /** The names of the functions called by decl, or empty if the body has side effects */
+    private static @Nonnull Optional<Set<String>> findCalls(
+            @Nonnull final BashpileParser.FunctionDeclarationStatementContext decl) {
+        final Set<String> declared = new HashSet<>();
+        final Set<String> reassigned = new HashSet<>();
+        final Set<String> called = new HashSet<>();
+        // depth first, without recursion
+        final Deque<ParseTree> stack = new ArrayDeque<>();
+        decl.paramaters().typedId().forEach(typedId -> declared.add(typedId.Id().getText()));
+        stack.push(decl.functionBlock());
+        while (!stack.isEmpty()) {
+            final ParseTree tree = stack.pop();
+            if (tree instanceof BashpileParser.PrintStatementContext
+                    || tree instanceof BashpileParser.CreatesStatementContext
+                    || tree instanceof BashpileParser.ShellStringContext
+                    || tree instanceof BashpileParser.FunctionDeclarationStatementContext
+                    || tree instanceof BashpileParser.FunctionForwardDeclarationStatementContext) {
+                return Optional.empty();
+            } else if (tree instanceof BashpileParser.TypedIdContext typedId) {
+                declared.add(typedId.Id().getText());
+            } else if (tree instanceof BashpileParser.ReassignmentStatementContext reassignment) {
+                reassigned.add(reassignment.Id().getText());
+            } else if (tree instanceof BashpileParser.FunctionCallExpressionContext call) {
+                called.add(call.Id().getText());
+            }
+            for (int i = tree.getChildCount() - 1; i >= 0; i--) {
+                if (tree.getChild(i) instanceof ParserRuleContext child) {
+                    stack.push(child);
+                }
+            }
+        }
+        return declared.containsAll(reassigned) ? Optional.of(called) : Optional.empty();
+    }
+}
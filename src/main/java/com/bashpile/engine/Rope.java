@@ -0,0 +1,133 @@
+package com.bashpile.engine;
+
+import com.bashpile.exceptions.BashpileUncheckedException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * An immutable String made of shared pieces.  Concatenation is O(1) and the text is only built when asked for, then
+ * remembered.  This keeps adding up thousands of {@link Translation}s linear instead of quadratic.
+ * <br>
+ * A rope can also be indented, see {@link #indent()}.  The indent is only applied when the text is written.
+ */
+/* package */ final class Rope {
+
+    /** The empty String */
+    /* package */ static final Rope EMPTY = new Rope("");
+
+    /** Marks the end of an indented rope while writing */
+    private static final Rope OUTDENT = new Rope("");
+
+    /** Wraps text */
+    /* package */ static @Nonnull Rope of(@Nonnull final String text) {
+        return text.isEmpty() ? EMPTY : new Rope(text);
+    }
+
+    @Nullable
+    private final Rope left;
+
+    /** Null for leaves and indented ropes */
+    @Nullable
+    private final Rope right;
+
+    /** Is this the left rope, indented? */
+    private final boolean indented;
+
+    /** The text.  Set on creation for leaves and on the first {@link #toString()} for the others. */
+    @Nullable
+    private volatile String text;
+
+    private Rope(@Nonnull final String text) {
+        this.left = null;
+        this.right = null;
+        this.indented = false;
+        this.text = text;
+    }
+
+    private Rope(@Nonnull final Rope left, @Nullable final Rope right, final boolean indented) {
+        this.left = left;
+        this.right = right;
+        this.indented = indented;
+    }
+
+    /** Appends other without copying either */
+    /* package */ @Nonnull Rope concat(@Nonnull final Rope other) {
+        if (other.isEmpty()) {
+            return this;
+        } else if (isEmpty()) {
+            return other;
+        }
+        return new Rope(this, other, false);
+    }
+
+    /**
+     * Indents every line one more level, as a block statement.  See {@link IndentingWriter} for how blank lines and
+     * a missing final newline are handled.  Never empty.
+     */
+    /* package */ @Nonnull Rope indent() {
+        return new Rope(this, null, true);
+    }
+
+    /** Flattens the rope to count, so prefer {@link #isEmpty()} */
+    /* package */ int length() {
+        return toString().length();
+    }
+
+    /* package */ boolean isEmpty() {
+        // ropes made by concat and indent are never empty
+        return text != null && text.isEmpty();
+    }
+
+    /**
+     * Writes the text without building it, so the memory needed doesn't grow with the size of the rope.
+     * Doesn't use recursion, so very deep ropes (e.g. from a long reduce) don't overflow the stack.
+     */
+    /* package */ void writeTo(@Nonnull final Writer out) throws IOException {
+        final IndentingWriter indentingWriter =
+                out instanceof IndentingWriter alreadyIndenting ? alreadyIndenting : new IndentingWriter(out);
+        final Deque<Rope> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            final Rope rope = stack.pop();
+            final String ropeText = rope.text;
+            if (rope == OUTDENT) {
+                indentingWriter.outdent();
+            } else if (ropeText != null) {
+                indentingWriter.write(ropeText);
+            } else if (rope.indented) {
+                indentingWriter.indent();
+                stack.push(OUTDENT);
+                stack.push(rope.left);
+            } else {
+                // the left side is written first so it goes on top
+                stack.push(Objects.requireNonNull(rope.right));
+                stack.push(rope.left);
+            }
+        }
+    }
+
+    /** Builds the text once */
+    @Override
+    public @Nonnull String toString() {
+        String ret = text;
+        if (ret != null) {
+            return ret;
+        }
+        final StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new BashpileUncheckedException(e);
+        }
+        ret = writer.toString();
+        text = ret;
+        return ret;
+    }
+}
@@ -0,0 +1,109 @@
+package com.bashpile.engine;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The changes to one part of the {@link EngineState} in order, e.g. the constants assigned so far.  Only appended to,
+ * so a {@link Checkpoint} is just a length into the log and taking one is O(1) however big the state is.
+ * Replaying a checkpoint rebuilds the state.
+ * <br>
+ * Each change is folded into a 64-bit fingerprint of the log so far, which {@link StatementCache} keys on.
+ * The same changes in the same order have the same fingerprint.
+ * <br>
+ * Not thread safe.  A log that is no longer appended to, e.g. one from an earlier translation, may be read by many
+ * threads.
+ *
+ * @param <T> The change.  Its {@link Object#toString()} is fingerprinted, so it must show everything that is equal.
+ */
+public class StateLog<T> {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /** Outside the range of a char, so it can't be confused with the text of a change */
+    private static final int SEPARATOR = 0x10000;
+
+    /** Folds text into a fingerprint with 64-bit FNV-1a */
+    /* package */ static long fold(final long fingerprint, @Nonnull final String text) {
+        long ret = fingerprint;
+        for (int i = 0; i < text.length(); i++) {
+            ret = (ret ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return (ret ^ SEPARATOR) * FNV_PRIME;
+    }
+
+    /** Folds a number into a fingerprint */
+    /* package */ static long fold(final long fingerprint, final long value) {
+        return fold(fingerprint, Long.toString(value));
+    }
+
+    /**
+     * Starts a new log with the changes up to a checkpoint, which may be of another log.
+     *
+     * @param checkpoint Where to stop.
+     * @param apply Redoes each change.
+     * @return The new log, at the checkpoint.
+     */
+    public static @Nonnull <T> StateLog<T> replay(
+            @Nonnull final Checkpoint<T> checkpoint, @Nonnull final Consumer<T> apply) {
+        final StateLog<T> ret = new StateLog<>(
+                new ArrayList<>(checkpoint.changes.subList(0, checkpoint.length)), checkpoint.fingerprint);
+        ret.changes.forEach(apply);
+        return ret;
+    }
+
+    @Nonnull
+    private final List<T> changes;
+
+    private long fingerprint;
+
+    public StateLog() {
+        this(new ArrayList<>(), FNV_OFFSET_BASIS);
+    }
+
+    private StateLog(@Nonnull final List<T> changes, final long fingerprint) {
+        this.changes = changes;
+        this.fingerprint = fingerprint;
+    }
+
+    /** Records a change that was just made */
+    public void append(@Nonnull final T change) {
+        changes.add(change);
+        fingerprint = fold(fingerprint, change.toString());
+    }
+
+    /** Marks the changes so far, O(1) */
+    public @Nonnull Checkpoint<T> checkpoint() {
+        return new Checkpoint<>(changes, changes.size(), fingerprint);
+    }
+
+    /**
+     * The first changes of a log.  Compared by identity, compare the {@link #fingerprint()}s instead.
+     *
+     * @param <T> The change.
+     */
+    public static final class Checkpoint<T> {
+
+        @Nonnull
+        private final List<T> changes;
+
+        private final int length;
+
+        private final long fingerprint;
+
+        private Checkpoint(@Nonnull final List<T> changes, final int length, final long fingerprint) {
+            this.changes = changes;
+            this.length = length;
+            this.fingerprint = fingerprint;
+        }
+
+        /** Identifies the changes.  Different changes get the same fingerprint with a chance of about 2^-64. */
+        public long fingerprint() {
+            return fingerprint;
+        }
+    }
+}
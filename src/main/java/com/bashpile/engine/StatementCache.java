@@ -0,0 +1,196 @@
+package com.bashpile.engine;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.misc.Interval;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * The translations of the top-level statements of one file, from the last time it was translated.
+ * When the file is translated again only statements that changed or come after a change in the types (or other
+ * {@link EngineState}) are translated again.  A statement that only moved to another line, or after more or fewer
+ * anonymous blocks and workaround variables, is reused with its line numbers and generated names renumbered.
+ * A change to the {@link Program} analyses translates everything again.
+ * <br>
+ * Thread safe.  When one file is translated twice at once the last to finish is kept.
+ *
+ * @see BashpileVisitor#visitProgram(com.bashpile.BashpileParser.ProgramContext)
+ */
+public class StatementCache {
+
+    /** The line comments of BashTranslationEngine, e.g. <code># print statement, Bashpile line 12</code> */
+    private static final Pattern LINE_COMMENT = Pattern.compile("(?m)^([ \\t]*#+ [^\\n]*, Bashpile line )(\\d+)");
+
+    /** The anonymous block functions of BashTranslationEngine, e.g. <code>anon3</code> */
+    private static final Pattern ANONYMOUS_BLOCK = Pattern.compile("\\b(anon)(\\d+)(?!\\d)");
+
+    /**
+     * The variables numbered by BashTranslationEngine's subshell workaround counter, e.g. <code>__bp_inline7</code>
+     * and the renamed <code>__bp_inline7_x</code>
+     */
+    private static final Pattern SUBSHELL_WORKAROUND = Pattern.compile(
+            "\\b(__bp_(?:functionReturn|bcResult|subshellReturn|exitCode|inline))(\\d+)(?!\\d)");
+
+    /** Source text that would be mistaken for something we renumber */
+    private static final Pattern RENUMBERED = Pattern.compile(
+            "Bashpile line \\d|anon\\d|__bp_(?:functionReturn|bcResult|subshellReturn|exitCode|inline)\\d");
+
+    /**
+     * Whether the translations of source can be renumbered.  Not when the source itself has text like a line comment
+     * or a generated name, e.g. <code>print("anon1")</code>, so its statements are only reused where they were.
+     */
+    public static boolean renumberable(@Nonnull final CharStream source) {
+        return source.size() == 0 || !RENUMBERED.matcher(source.getText(Interval.of(0, source.size() - 1))).find();
+    }
+
+    /**
+     * Creates a key for ctx.
+     *
+     * @param renumberable See {@link #renumberable(CharStream)}.  When false the key includes the position.
+     */
+    public static @Nonnull Key key(
+            @Nonnull final ParserRuleContext ctx,
+            @Nonnull final List<? extends ParserRuleContext> dependencies,
+            @Nonnull final EngineState before,
+            final boolean renumberable) {
+        // a dependency's line number may be in the hoisted comments, it moves with ctx
+        final int line = ctx.start.getLine();
+        final String dependencyTokens = dependencies.stream()
+                .map(dependency -> (dependency.start.getLine() - line) + tokens(dependency))
+                .collect(Collectors.joining("\n"));
+        return new Key(tokens(ctx), dependencyTokens, before.fingerprint(),
+                renumberable ? null : Position.of(ctx, before));
+    }
+
+    /**
+     * The token types and texts of a parse tree.
+     * Unlike {@link ParseTree#getText()} this keeps the boundaries between tokens.
+     */
+    private static @Nonnull String tokens(@Nonnull final ParseTree tree) {
+        final StringBuilder ret = new StringBuilder();
+        appendTokens(tree, ret);
+        return ret.toString();
+    }
+
+    private static void appendTokens(@Nonnull final ParseTree tree, @Nonnull final StringBuilder builder) {
+        if (tree instanceof TerminalNode terminal) {
+            builder.append(terminal.getSymbol().getType()).append(':').append(terminal.getText()).append('\0');
+            return;
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            appendTokens(tree.getChild(i), builder);
+        }
+    }
+
+    private volatile Generation last = new Generation(null, Map.of());
+
+    /**
+     * Gets the entries from the last translation.  Compares the analyses once, so the keys don't need to.
+     *
+     * @param program The analyses of the program being translated.
+     * @return The entries, or none if the last translation was of a program with other analyses.
+     */
+    public @Nonnull Map<Key, Entry> entriesFor(@Nonnull final Program program) {
+        final Generation generation = last;
+        return program.equals(generation.program()) ? generation.entries() : Map.of();
+    }
+
+    /** Replaces all the entries with the statements of the latest translation */
+    public void replaceAll(@Nonnull final Program program, @Nonnull final Map<Key, Entry> latest) {
+        last = new Generation(program, Map.copyOf(latest));
+    }
+
+    /**
+     * What the translation of any statement may depend on, from analysing the whole program.
+     *
+     * @param constantCandidates The {@link ConstantCandidates} names.  A new reassignment anywhere changes what the
+     *                           earlier statements may propagate.
+     * @param pureFunctions The {@link PureFunctions} names.  How a function is called depends on its body.
+     * @param inlineFunctions The {@link InlineFunctions#bodies()}.  A call site is translated from the declaration,
+     *                        which may be in another statement.
+     * @param deadCode The {@link DeadCode}.
+     */
+    public record Program(
+            @Nonnull Set<String> constantCandidates,
+            @Nonnull Set<String> pureFunctions,
+            @Nonnull Map<String, String> inlineFunctions,
+            @Nonnull DeadCode deadCode) {}
+
+    /**
+     * Identifies a top-level statement translation.
+     *
+     * @param tokens The statement's tokens, see {@link #tokens(ParseTree)}.
+     * @param dependencyTokens The relative lines and tokens of other statements that the translation reads, e.g. the
+     *                         function declaration of a forward declaration.
+     * @param before The {@link EngineState#fingerprint()} before the statement.
+     * @param pinned Where the statement is, if its translation can't be renumbered.
+     */
+    public record Key(
+            @Nonnull String tokens, @Nonnull String dependencyTokens, long before, @Nullable Position pinned) {}
+
+    /**
+     * Where a statement was translated.  Translations include line numbers in comments and the counters in generated
+     * names.
+     *
+     * @param line The line the statement starts on.
+     * @param anonBlockCounter The {@link EngineState#anonBlockCounter()} before the statement.
+     * @param subshellWorkaroundCounter The {@link EngineState#subshellWorkaroundCounter()} before the statement.
+     */
+    public record Position(int line, int anonBlockCounter, int subshellWorkaroundCounter) {
+
+        /** Where ctx is, with before the engine's state before it */
+        public static @Nonnull Position of(@Nonnull final ParserRuleContext ctx, @Nonnull final EngineState before) {
+            return new Position(ctx.start.getLine(), before.anonBlockCounter(), before.subshellWorkaroundCounter());
+        }
+    }
+
+    /**
+     * A top-level statement translation.
+     *
+     * @param translation What the statement translated to.
+     * @param after The engine's state after the statement.
+     * @param position Where the statement was translated.
+     */
+    public record Entry(@Nonnull Translation translation, @Nonnull EngineState after, @Nonnull Position position) {
+
+        /** This translation as if it had been translated at position */
+        public @Nonnull Entry moveTo(@Nonnull final Position position) {
+            if (position.equals(this.position)) {
+                return this;
+            }
+            final int lines = position.line() - this.position.line();
+            final int anonBlocks = position.anonBlockCounter() - this.position.anonBlockCounter();
+            final int subshellWorkarounds =
+                    position.subshellWorkaroundCounter() - this.position.subshellWorkaroundCounter();
+            final Translation moved = translation.lambdaBody(body -> {
+                String ret = shift(body, LINE_COMMENT, lines);
+                ret = shift(ret, ANONYMOUS_BLOCK, anonBlocks);
+                return shift(ret, SUBSHELL_WORKAROUND, subshellWorkarounds);
+            });
+            return new Entry(moved, after.renumber(anonBlocks, subshellWorkarounds), position);
+        }
+
+        /** Adds delta to the numbers of pattern's matches, which are the prefix and the number groups */
+        private static @Nonnull String shift(
+                @Nonnull final String text, @Nonnull final Pattern pattern, final int delta) {
+            if (delta == 0) {
+                return text;
+            }
+            return pattern.matcher(text).replaceAll(match -> Matcher.quoteReplacement(
+                    match.group(1) + (Integer.parseInt(match.group(2)) + delta)));
+        }
+    }
+
+    /** The entries of one translation, and the analyses they were translated with */
+    private record Generation(@Nullable Program program, @Nonnull Map<Key, Entry> entries) {}
+}
@@ -6,30 +6,32 @@ import com.bashpile.engine.strongtypes.TypeMetadata;
 import com.bashpile.exceptions.BashpileUncheckedAssertionException;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Objects;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static com.bashpile.Asserts.*;
-import static org.apache.commons.lang3.StringUtils.isEmpty;
 
 /**
  * A target shell (e.g. Bash) translation of some Bashpile script.  Immutable.
- *
- * @param preamble This is text that needs to be emitted before the rest of the translation.<br>
- *                 This is to handle the case of a nested command substitution, since they are not supported well
- *                 in Bash (errored exit codes are ignored) we need to assign the inner command substitution to a
- *                 variable and have the <code>body</code> just be the variable.
- * @param body The target shell script (e.g. Bash) literal text.
- * @param type The Bashpile type.  For Shell Strings and Command Substitutions this is the type of the result.
- *             E.g. $(expr 1 + 1) could have a type of int.
- * @param typeMetadata Further information on the type (e.g. is this a subshell?)
+ * <br>
+ * The preamble and body are {@link Rope}s so that adding translations together doesn't copy their text.  The text is
+ * built when {@link #preamble()} or {@link #body()} is first called.
+ * <ul>
+ * <li>preamble: This is text that needs to be emitted before the rest of the translation.<br>
+ *     This is to handle the case of a nested command substitution, since they are not supported well
+ *     in Bash (errored exit codes are ignored) we need to assign the inner command substitution to a
+ *     variable and have the <code>body</code> just be the variable.</li>
+ * <li>body: The target shell script (e.g. Bash) literal text.</li>
+ * <li>type: The Bashpile type.  For Shell Strings and Command Substitutions this is the type of the result.
+ *     E.g. $(expr 1 + 1) could have a type of int.</li>
+ * <li>typeMetadata: Further information on the type (e.g. is this a subshell?)</li>
+ * </ul>
  */
-public record Translation(
-        @Nonnull String preamble,
-        @Nonnull String body,
-        @Nonnull Type type,
-        @Nonnull TypeMetadata typeMetadata) {
+public final class Translation {
 
     // static constants
 
@@ -79,10 +81,43 @@ public record Translation(
 
     // toPhraseTranslation not used/needed
 
+    // instance fields
+
+    @Nonnull
+    private final Rope preamble;
+
+    @Nonnull
+    private final Rope body;
+
+    @Nonnull
+    private final Type type;
+
+    @Nonnull
+    private final TypeMetadata typeMetadata;
+
     // constructors
 
+    public Translation(
+            @Nonnull final String preamble,
+            @Nonnull final String body,
+            @Nonnull final Type type,
+            @Nonnull final TypeMetadata typeMetadata) {
+        this(Rope.of(preamble), Rope.of(body), type, typeMetadata);
+    }
+
     public Translation(@Nonnull final String text, @Nonnull final Type type, @Nonnull final TypeMetadata typeMetadata) {
-        this("", text, type, typeMetadata);
+        this(Rope.EMPTY, Rope.of(text), type, typeMetadata);
+    }
+
+    private Translation(
+            @Nonnull final Rope preamble,
+            @Nonnull final Rope body,
+            @Nonnull final Type type,
+            @Nonnull final TypeMetadata typeMetadata) {
+        this.preamble = preamble;
+        this.body = body;
+        this.type = type;
+        this.typeMetadata = typeMetadata;
     }
 
     /** Accumulates all the stream translations' preambles and bodies into the result */
@@ -98,14 +133,36 @@ public record Translation(
 
     /** Concatenates other's preamble and body to this preamble and body */
     public Translation add(@Nonnull final Translation other) {
-        return new Translation(preamble + other.preamble, body + other.body, type, typeMetadata);
+        return new Translation(preamble.concat(other.preamble), body.concat(other.body), type, typeMetadata);
+    }
+
+    // accessors
+
+    /** The text to emit before the rest of the translation */
+    public @Nonnull String preamble() {
+        return preamble.toString();
+    }
+
+    /** The target shell script (e.g. Bash) literal text */
+    public @Nonnull String body() {
+        return body.toString();
+    }
+
+    /** The Bashpile type */
+    public @Nonnull Type type() {
+        return type;
+    }
+
+    /** Further information on the type */
+    public @Nonnull TypeMetadata typeMetadata() {
+        return typeMetadata;
     }
 
     // preamble instance methods
 
     /** Appends additionalPreamble to this object's preamble */
     public Translation addPreamble(@Nonnull final String additionalPreamble) {
-        return new Translation(preamble + additionalPreamble, body, type, typeMetadata);
+        return new Translation(preamble.concat(Rope.of(additionalPreamble)), body, type, typeMetadata);
     }
 
     /** Ensures this translation has no preamble */
@@ -118,19 +175,37 @@ public record Translation(
 
     /** Checks if this translation has a preamble */
     public boolean hasPreamble() {
-        return !isEmpty(preamble);
+        return !preamble.isEmpty();
+    }
+
+    /** Checks if this translation has a body, e.g. it isn't a statement that was left out */
+    public boolean hasBody() {
+        return !body.isEmpty();
     }
 
     /** Prepends the preamble to the body */
     public Translation mergePreamble() {
-        return new Translation(preamble + body, type, typeMetadata);
+        return new Translation(Rope.EMPTY, preamble.concat(body), type, typeMetadata);
     }
 
     // body instance methods
 
     /** Replaces the body */
     public Translation body(@Nonnull final String nextBody) {
-        return new Translation(preamble, nextBody, type, typeMetadata);
+        return new Translation(preamble, Rope.of(nextBody), type, typeMetadata);
+    }
+
+    /**
+     * Indents every line of the body one level, as the statements of a block are.  The indent is applied when the
+     * body is written or read, so nested blocks are only indented once.
+     */
+    public Translation indentBody() {
+        return new Translation(preamble, body.indent(), type, typeMetadata);
+    }
+
+    /** Writes the body to out without building it as a String */
+    public void writeBody(@Nonnull final Writer out) throws IOException {
+        body.writeTo(out);
     }
 
     /** See {@link Strings#unescape(java.lang.String)} */
@@ -155,18 +230,18 @@ public record Translation(
 
     /** Apply arbitrary function to body.  E.g. `str -> str`. */
     public Translation lambdaBody(@Nonnull final Function<String, String> lambda) {
-        return new Translation(preamble, lambda.apply(body), type, typeMetadata);
+        return new Translation(preamble, Rope.of(lambda.apply(body())), type, typeMetadata);
     }
 
     /** Ensures body is a paragraph */
     public Translation assertParagraphBody() {
-        assertIsParagraph(body);
+        assertIsParagraph(body());
         return this;
     }
 
     /** Ensures body has no empty or blank lines and is not the empty string */
     public Translation assertNoBlankLinesInBody() {
-        assertNoBlankLines(body);
+        assertNoBlankLines(body());
         return this;
     }
 
@@ -186,4 +261,29 @@ public record Translation(
     public boolean isInlineOrSubshell() {
         return typeMetadata.equals(TypeMetadata.SUBSHELL) || typeMetadata.equals(TypeMetadata.INLINE);
     }
+
+    // Object methods, as a record would have them
+
+    @Override
+    public boolean equals(final Object other) {
+        if (this == other) {
+            return true;
+        }
+        return other instanceof Translation that
+                && type == that.type
+                && typeMetadata == that.typeMetadata
+                && preamble().equals(that.preamble())
+                && body().equals(that.body());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(preamble(), body(), type, typeMetadata);
+    }
+
+    @Override
+    public String toString() {
+        return "Translation[preamble=%s, body=%s, type=%s, typeMetadata=%s]".formatted(
+                preamble(), body(), type, typeMetadata);
+    }
 }
@@ -14,6 +14,14 @@ public interface TranslationEngine {
      */
     void setVisitor(final BashpileVisitor visitor);
 
+    // incremental translation
+
+    /** Gets the state that the translation of the next top-level statement depends on */
+    EngineState getState();
+
+    /** Restores the state after a top-level statement's translation was taken from a {@link StatementCache} */
+    void setState(final EngineState state);
+
     // headers
 
     /** For emitting where the translated script comes from and when it was generated */
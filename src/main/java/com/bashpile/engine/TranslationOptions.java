@@ -0,0 +1,33 @@
+package com.bashpile.engine;
+
+/**
+ * Settings that change what a {@link TranslationEngine} emits.  Immutable.
+ * <br>
+ * The {@link #toString()} is part of the transpile cache key, so every component must change it.
+ *
+ * @param deterministic When true the same input always translates to the same text, e.g. no timestamp in the header.
+ * @param bcCoprocess When true float calculations are sent to one <code>bc</code> started by the script, instead of
+ *  starting a <code>bc</code> for each.
+ * @param bufferOutput When true prints are collected in a variable and written out together, at the end of the script
+ *  or a block and before anything else that may write.
+ */
+public record TranslationOptions(boolean deterministic, boolean bcCoprocess, boolean bufferOutput) {
+
+    /** The options used when none are specified */
+    public static final TranslationOptions DEFAULT = new TranslationOptions(false, false, false);
+
+    /** Replaces deterministic */
+    public TranslationOptions deterministic(final boolean isDeterministic) {
+        return new TranslationOptions(isDeterministic, bcCoprocess, bufferOutput);
+    }
+
+    /** Replaces bcCoprocess */
+    public TranslationOptions bcCoprocess(final boolean useBcCoprocess) {
+        return new TranslationOptions(deterministic, useBcCoprocess, bufferOutput);
+    }
+
+    /** Replaces bufferOutput */
+    public TranslationOptions bufferOutput(final boolean useBuffer) {
+        return new TranslationOptions(deterministic, bcCoprocess, useBuffer);
+    }
+}
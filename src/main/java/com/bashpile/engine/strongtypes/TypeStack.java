@@ -2,84 +2,97 @@ package com.bashpile.engine.strongtypes;
 
 import com.bashpile.BashpileParser;
 import com.bashpile.engine.BashTranslationEngine;
+import com.bashpile.engine.StateLog;
 import com.bashpile.exceptions.UserError;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.Stack;
-
-import static com.bashpile.Asserts.assertMapDoesNotContainKey;
 
 /**
  * A call stack but just for Type information to implement strong typing.
+ * <br>
+ * Stored as a scoped symbol table: each name maps to its innermost binding, which links to the bindings it shadows.
+ * Lookups are one hash map get no matter how deep the stack is.  Each frame keeps an undo log of the names it
+ * bound, so popping it only touches those names.
  *
  * @see <a href="https://en.wikipedia.org/wiki/Call_stack">Wikipedia - Call Stack</a>
  */
 public class TypeStack {
-    private final Stack<TypeStackframe> frames;
 
-    public TypeStack() {
-        frames = new Stack<>();
-        frames.push(TypeStackframe.of());
-    }
+    /** The innermost binding of each variable */
+    private final Map<String, Binding<Type>> variables = HashMap.newHashMap(64);
+
+    /** The innermost binding of each function */
+    private final Map<String, Binding<FunctionTypeInfo>> functions = HashMap.newHashMap(64);
+
+    /** The variable names bound in each frame, bottom frame first */
+    private final List<String> variableLog = new ArrayList<>();
+
+    /** The function names bound in each frame, bottom frame first */
+    private final List<String> functionLog = new ArrayList<>();
+
+    /** Where each frame, except the bottom one, starts in the logs */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /** The frame the puts go to.  The bottom frame is 0. */
+    private int depth = 0;
+
+    /** The puts into the bottom frame, in order, for {@link #checkpoint()} */
+    private StateLog<Put> bottomFrameLog = new StateLog<>();
 
     /** Puts the variable's type into the current stackframe.  lineNumber is needed for error information */
     public void putVariableType(
             @Nonnull final String variableName, @Nonnull final Type type, final int lineNumber) {
-        final Map<String, Type> typeMap = frames.peek().variables();
-        assertMapDoesNotContainKey(variableName, typeMap, new UserError(
-                "%s is already declared as a %s".formatted(variableName, type.name()), lineNumber));
-        typeMap.put(variableName, type);
+        final Binding<Type> current = variables.get(variableName);
+        if (current != null && current.depth() == depth) {
+            throw new UserError("%s is already declared as a %s".formatted(variableName, type.name()), lineNumber);
+        }
+        variables.put(variableName, new Binding<>(type, depth, current));
+        variableLog.add(variableName);
+        if (depth == 0) {
+            bottomFrameLog.append(new Put(variableName, type, null));
+        }
     }
 
     /** Gets the type of the variable, or NOT_FOUND */
     public @Nonnull Type getVariableType(@Nonnull final String variableName) {
-
-        // foreach stack frame search for variableName in the variableMap
-        Optional<Map<String, Type>> topmostOptional = frames.stream()
-                .map(TypeStackframe::variables)
-                .filter(x -> x.containsKey(variableName))
-                // .stream() starts at the bottom of the stack so, we need to get the last match
-                .reduce((first, second) -> second);
-
-        if (topmostOptional.isPresent()) {
-            return topmostOptional.get().get(variableName);
-        } // else
-        return Type.NOT_FOUND;
+        final Binding<Type> binding = variables.get(variableName);
+        return binding != null ? binding.value() : Type.NOT_FOUND;
     }
 
     /** Checks if the variable is defined */
     public boolean containsVariable(@Nonnull final String variableName) {
-        final Type foundType = getVariableType(variableName);
-        return foundType != Type.NOT_FOUND;
+        return variables.containsKey(variableName);
     }
 
     /** Puts the function's type information into the current stackframe */
     public void putFunctionTypes(@Nonnull final String functionName, @Nonnull final FunctionTypeInfo functionTypeInfo) {
-        frames.peek().functions().put(functionName, functionTypeInfo);
+        if (depth == 0) {
+            bottomFrameLog.append(new Put(functionName, null, functionTypeInfo));
+        }
+        final Binding<FunctionTypeInfo> current = functions.get(functionName);
+        if (current != null && current.depth() == depth) {
+            // replaces, like a put into the frame's map, so it's already in the log
+            functions.put(functionName, new Binding<>(functionTypeInfo, depth, current.shadowed()));
+            return;
+        }
+        functions.put(functionName, new Binding<>(functionTypeInfo, depth, current));
+        functionLog.add(functionName);
     }
 
     /** Gets the type information for the function, or {@link FunctionTypeInfo#EMPTY}. */
     public @Nonnull FunctionTypeInfo getFunctionTypes(@Nonnull final String functionName) {
-
-        // foreach stack frame search for variableName in the variableMap
-        Optional<Map<String, FunctionTypeInfo>> topmostOptional = frames.stream()
-                .map(TypeStackframe::functions)
-                .filter(x -> x.containsKey(functionName))
-                // .stream() starts at the bottom of the stack, so we need to get the last match
-                .reduce((first, second) -> second);
-
-        if (topmostOptional.isPresent()) {
-            return topmostOptional.get().get(functionName);
-        } // else
-        return FunctionTypeInfo.EMPTY;
+        final Binding<FunctionTypeInfo> binding = functions.get(functionName);
+        return binding != null ? binding.value() : FunctionTypeInfo.EMPTY;
     }
 
     /** Checks if the function is defined */
     public boolean containsFunction(@Nonnull final String functionName) {
-        final FunctionTypeInfo foundFunction = getFunctionTypes(functionName);
-        return foundFunction != FunctionTypeInfo.EMPTY;
+        return functions.containsKey(functionName);
     }
 
     /**
@@ -95,11 +108,115 @@ public class TypeStack {
         return new TypeStackClosable(this);
     }
 
+    /**
+     * Copies every frame.
+     *
+     * @return Immutable frames, bottom of the stack first.  Snapshots of equal stacks are equal.
+     */
+    public @Nonnull List<TypeStackframe> snapshot() {
+        final List<TypeStackframe> ret = new ArrayList<>(depth + 1);
+        for (int frame = 0; frame <= depth; frame++) {
+            final int variablesEnd = frame < depth ? frames.get(frame).variableLogStart() : variableLog.size();
+            final int functionsEnd = frame < depth ? frames.get(frame).functionLogStart() : functionLog.size();
+            final int variablesStart = frame > 0 ? frames.get(frame - 1).variableLogStart() : 0;
+            final int functionsStart = frame > 0 ? frames.get(frame - 1).functionLogStart() : 0;
+            ret.add(new TypeStackframe(
+                    frameBindings(functions, functionLog.subList(functionsStart, functionsEnd), frame),
+                    frameBindings(variables, variableLog.subList(variablesStart, variablesEnd), frame)));
+        }
+        return ret;
+    }
+
+    /**
+     * Marks the bottom frame, for incremental translation.  O(1), unlike a {@link #snapshot()}.
+     *
+     * @return A checkpoint to {@link #restore(StateLog.Checkpoint)}.  Its fingerprint identifies the bottom frame.
+     */
+    public @Nonnull StateLog.Checkpoint<Put> checkpoint() {
+        if (depth != 0) {
+            throw new IllegalStateException("Can only checkpoint the bottom frame, at depth " + depth);
+        }
+        return bottomFrameLog.checkpoint();
+    }
+
+    /** Replaces all frames with the bottom frame of a {@link #checkpoint()} */
+    public void restore(@Nonnull final StateLog.Checkpoint<Put> checkpoint) {
+        variables.clear();
+        functions.clear();
+        variableLog.clear();
+        functionLog.clear();
+        frames.clear();
+        depth = 0;
+        bottomFrameLog = StateLog.replay(checkpoint, put -> {
+            if (put.variableType() != null) {
+                variables.put(put.name(), new Binding<>(put.variableType(), 0, null));
+                variableLog.add(put.name());
+            } else if (functions.put(put.name(), new Binding<>(put.functionTypes(), 0, null)) == null) {
+                functionLog.add(put.name());
+            }
+        });
+    }
+
     /* package */ void push() {
-        frames.push(TypeStackframe.of());
+        frames.add(new Frame(variableLog.size(), functionLog.size()));
+        depth++;
     }
 
     /* package */ void pop() {
-        frames.pop();
+        final Frame frame = frames.remove(frames.size() - 1);
+        undo(variables, variableLog, frame.variableLogStart());
+        undo(functions, functionLog, frame.functionLogStart());
+        depth--;
     }
+
+    // helpers
+
+    /** Unbinds the names logged after start, newest first, so each name gets back the binding it shadowed */
+    private static <T> void undo(
+            @Nonnull final Map<String, Binding<T>> bindings, @Nonnull final List<String> log, final int start) {
+        for (int i = log.size() - 1; i >= start; i--) {
+            final String name = log.remove(i);
+            final Binding<T> shadowed = bindings.get(name).shadowed();
+            if (shadowed != null) {
+                bindings.put(name, shadowed);
+            } else {
+                bindings.remove(name);
+            }
+        }
+    }
+
+    /** The values that names were bound to in one frame */
+    private static <T> @Nonnull Map<String, T> frameBindings(
+            @Nonnull final Map<String, Binding<T>> bindings, @Nonnull final List<String> names, final int frame) {
+        final Map<String, T> ret = HashMap.newHashMap(names.size());
+        for (final String name : names) {
+            Binding<T> binding = bindings.get(name);
+            while (binding.depth() != frame) {
+                binding = binding.shadowed();
+            }
+            ret.put(name, binding.value());
+        }
+        return Map.copyOf(ret);
+    }
+
+    /**
+     * A name's value in one frame.
+     *
+     * @param value The type.
+     * @param depth The frame that bound it.
+     * @param shadowed The binding of the same name in an outer frame, or null.
+     */
+    private record Binding<T>(@Nonnull T value, int depth, @Nullable Binding<T> shadowed) {}
+
+    /** Where a frame starts in the undo logs */
+    private record Frame(int variableLogStart, int functionLogStart) {}
+
+    /**
+     * A put into the bottom frame.
+     *
+     * @param name The variable or function name.
+     * @param variableType The variable's type, or null for a function.
+     * @param functionTypes The function's types, or null for a variable.
+     */
+    public record Put(@Nonnull String name, @Nullable Type variableType, @Nullable FunctionTypeInfo functionTypes) {}
 }
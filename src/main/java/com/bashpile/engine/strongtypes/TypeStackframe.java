@@ -4,7 +4,7 @@ import javax.annotation.Nonnull;
 import java.util.HashMap;
 import java.util.Map;
 
-/** Holds all the functions and variables for the current context */
+/** Holds the functions and variables declared in one frame, see {@link TypeStack#snapshot()} */
 public record TypeStackframe(@Nonnull Map<String, FunctionTypeInfo> functions, @Nonnull Map<String, Type> variables) {
 
     /** Creates a new TypeStackFrame */
@@ -4,11 +4,27 @@ import javax.annotation.Nonnull;
 
 /** Generic error indicating that the Bashpile end-user made a mistake */
 public class UserError extends BashpileUncheckedException {
+
+    /** The Bashpile line of the mistake, or 0 if unknown */
+    private final int lineNumber;
+
     protected UserError(@Nonnull final String message) {
         super(message);
+        this.lineNumber = 0;
     }
 
     public UserError(@Nonnull final String message, final int lineNumber) {
-        super("Syntax error on line %d: %s".formatted(lineNumber, message));
+        this("Syntax error on line %d: %s", message, lineNumber);
+    }
+
+    /** @param format Gets the line number and then the message */
+    protected UserError(@Nonnull final String format, @Nonnull final String message, final int lineNumber) {
+        super(format.formatted(lineNumber, message));
+        this.lineNumber = lineNumber;
+    }
+
+    /** The Bashpile line of the mistake, or 0 if unknown */
+    public int getLineNumber() {
+        return lineNumber;
     }
 }
@@ -10,8 +10,10 @@ import javax.annotation.Nonnull;
 import java.io.Closeable;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Runs commands in Bash.  Runs `wsl bash` in Windows.
@@ -43,6 +45,29 @@ public class BashShell implements Closeable {
         }
     }
 
+    /**
+     * Runs one command with its arguments.  Each argument is quoted, so spaces, quotes and other shell syntax in them
+     * reach the command unchanged.
+     *
+     * @param command The command name followed by its arguments.
+     * @return The STDIN, STDOUT and exit code wrapped in an ExecutionResults object.
+     * @throws IOException on error.
+     * @see #quote(String)
+     */
+    public static @Nonnull ExecutionResults runAndJoin(@Nonnull List<String> command) throws IOException {
+        return runAndJoin(command.stream().map(BashShell::quote).collect(Collectors.joining(" ")));
+    }
+
+    /**
+     * Single quotes text for Bash.  An embedded single quote closes the quoting, is escaped and reopens it.
+     *
+     * @param text Any text, e.g. <code>it's</code>.
+     * @return The text as one Bash word, e.g. <code>'it'\''s'</code>.
+     */
+    public static @Nonnull String quote(@Nonnull final String text) {
+        return "'" + text.replace("'", "'\\''") + "'";
+    }
+
     /**
      * Runs bashString and supporting worker threads in the background
      *
@@ -0,0 +1,99 @@
+package com.bashpile;
+
+import com.bashpile.benchmarks.BenchmarkPrograms;
+import com.bashpile.engine.TranslationOptions;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.Token;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AntlrUtilsTest {
+
+    @Test
+    void twoStageParseMatchesLlParse() {
+        final String program = BenchmarkPrograms.generate(20);
+        final BashpileParser llParser = new BashpileParser(tokens(program));
+        assertEquals(
+                llParser.program().toStringTree(llParser),
+                AntlrUtils.parseProgram(tokens(program)).toStringTree(llParser));
+    }
+
+    @Test
+    void twoStageParseReportsSyntaxErrorsLikeLlParse() {
+        final String program = """
+                x: int = (1 + 2
+                print(x)
+                """;
+        final List<String> llErrors = new ArrayList<>();
+        final BashpileParser llParser = new BashpileParser(tokens(program));
+        llParser.addErrorListener(new BaseErrorListener() {
+            @Override
+            public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line,
+                                    int charPositionInLine, String msg, RecognitionException e) {
+                llErrors.add("line %d:%d %s".formatted(line, charPositionInLine, msg));
+            }
+        });
+        final String llTree = llParser.program().toStringTree(llParser);
+        assertFalse(llErrors.isEmpty());
+
+        final PrintStream originalErr = System.err;
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String twoStageTree;
+        try {
+            System.setErr(new PrintStream(err, true, StandardCharsets.UTF_8));
+            twoStageTree = AntlrUtils.parseProgram(tokens(program)).toStringTree(llParser);
+        } finally {
+            System.setErr(originalErr);
+        }
+        assertEquals(llTree, twoStageTree);
+        assertEquals(llErrors, err.toString(StandardCharsets.UTF_8).lines().toList());
+    }
+
+    @Test
+    void profileParserReportsRuleNames() throws IOException {
+        final String report = AntlrUtils.profileParser(
+                IOUtils.toInputStream(BenchmarkPrograms.generate(5), StandardCharsets.UTF_8));
+        assertTrue(report.startsWith("Parsed "), report);
+        assertTrue(report.lines().anyMatch(line -> line.startsWith("statement ")), report);
+        assertTrue(report.lines().anyMatch(line -> line.startsWith("expression ")), report);
+    }
+
+    @Test
+    void readSourceSkipsShebangAndKeepsLineNumbers(@TempDir final Path tempDir) throws IOException {
+        final Path file = Files.writeString(tempDir.resolve("script.bps"), "#!/usr/bin/env bashpile\nprint(\"hi\")\n");
+
+        final CommonTokenStream tokens = new CommonTokenStream(new BashpileLexer(AntlrUtils.readSource(file)));
+        tokens.fill();
+
+        final Token first = tokens.getTokens().stream()
+                .filter(token -> token.getChannel() == Token.DEFAULT_CHANNEL && !token.getText().isBlank())
+                .findFirst()
+                .orElseThrow();
+        assertEquals("print", first.getText());
+        assertEquals(2, first.getLine());
+        assertTrue(AntlrUtils.parse(file.toString(), AntlrUtils.readSource(file), TranslationOptions.DEFAULT, null,
+                null).contains("hi"));
+    }
+
+    // helpers
+
+    private static CommonTokenStream tokens(final String program) {
+        return new CommonTokenStream(new BashpileLexer(CharStreams.fromString(program)));
+    }
+}
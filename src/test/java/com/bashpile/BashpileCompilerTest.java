@@ -0,0 +1,121 @@
+package com.bashpile;
+
+import com.bashpile.benchmarks.BenchmarkPrograms;
+import com.bashpile.engine.TranslationOptions;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BashpileCompilerTest {
+
+    private static final BashpileCompiler COMPILER = BashpileCompiler.of(BashpileCompiler.Options.DEFAULT
+            .deterministic(true)
+            .shellcheck(false));
+
+    @Test
+    void compilesLikeParse() throws IOException {
+        final String program = BenchmarkPrograms.generate(2);
+        final BashpileCompiler.CompileResult result = COMPILER.compile("program", program);
+
+        assertTrue(result.success(), result.diagnostics().toString());
+        assertEquals(List.of(), result.diagnostics());
+        assertEquals(AntlrUtils.parse("program", IOUtils.toInputStream(program, StandardCharsets.UTF_8),
+                TranslationOptions.DEFAULT.deterministic(true)), result.bash());
+        assertEquals(result.bash(), COMPILER.compile("program", new StringReader(program)).bash());
+        assertFalse(result.timings().total().isNegative());
+        assertTrue(result.timings().total().compareTo(result.timings().parse()) >= 0);
+    }
+
+    @Test
+    void compilesFilesWithShebangs(@TempDir final Path tempDir) throws IOException {
+        final Path file = Files.writeString(tempDir.resolve("shebang.bps"), """
+                #!/usr/bin/env bpr
+                print("hello")
+                x: int = "not an int"
+                """);
+        final BashpileCompiler.CompileResult result = COMPILER.compile(file);
+
+        assertFalse(result.success());
+        assertNull(result.bash());
+        final BashpileCompiler.Diagnostic diagnostic = result.diagnostics().get(0);
+        assertEquals(BashpileCompiler.Stage.TRANSLATION, diagnostic.stage());
+        assertEquals(3, diagnostic.line(), diagnostic.message());
+    }
+
+    @Test
+    void compilesTextWithShebangsLikeFiles(@TempDir final Path tempDir) throws IOException {
+        final String program = """
+                #!/usr/bin/env bpr
+                print("hello")
+                x: int = = 5
+                """;
+        final Path file = Files.writeString(tempDir.resolve("shebang.bps"), program);
+
+        final BashpileCompiler.CompileResult fromFile = COMPILER.compile(file);
+        assertFalse(fromFile.success());
+        assertEquals(3, fromFile.diagnostics().get(0).line());
+        assertEquals(fromFile.diagnostics(), COMPILER.compile("shebang", program).diagnostics());
+        assertEquals(fromFile.diagnostics(), COMPILER.compile("shebang", new StringReader(program)).diagnostics());
+    }
+
+    @Test
+    void compilesWithTheTranslationOptions() throws IOException {
+        final String program = "x: float = 1.5\nprint(x * 2.5)\nprint(x + 1)\n";
+        final BashpileCompiler compiler = BashpileCompiler.of(BashpileCompiler.Options.DEFAULT
+                .deterministic(true)
+                .shellcheck(false)
+                .bcCoprocess(true)
+                .bufferOutput(true));
+        final BashpileCompiler.CompileResult result = compiler.compile("program", program);
+
+        assertTrue(result.success(), result.diagnostics().toString());
+        assertEquals(AntlrUtils.parse("program", IOUtils.toInputStream(program, StandardCharsets.UTF_8),
+                TranslationOptions.DEFAULT.deterministic(true).bcCoprocess(true).bufferOutput(true)), result.bash());
+        assertNotEquals(COMPILER.compile("program", program).bash(), result.bash());
+    }
+
+    @Test
+    void reportsSyntaxErrors() {
+        final BashpileCompiler.CompileResult result = COMPILER.compile("bad", "print(\"ok\")\nx: int = = 5\n");
+
+        assertFalse(result.success());
+        assertFalse(result.diagnostics().isEmpty());
+        final BashpileCompiler.Diagnostic diagnostic = result.diagnostics().get(0);
+        assertEquals(BashpileCompiler.Stage.SYNTAX, diagnostic.stage());
+        assertEquals(2, diagnostic.line());
+        assertTrue(diagnostic.column() > 0);
+        assertEquals(Duration.ZERO, result.timings().translate());
+    }
+
+    @Test
+    void oneCompilerCanBeUsedConcurrently() throws Exception {
+        final List<String> programs = IntStream.range(1, 6).mapToObj(BenchmarkPrograms::generate).toList();
+        final List<String> expected = programs.stream().map(program -> COMPILER.compile("p", program).bash()).toList();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String>> futures = IntStream.range(0, 40)
+                    .mapToObj(i -> executor.submit(() -> COMPILER.compile("p", programs.get(i % 5)).bash()))
+                    .toList();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(expected.get(i % 5), futures.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
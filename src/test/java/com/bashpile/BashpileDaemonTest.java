@@ -0,0 +1,141 @@
+package com.bashpile;
+
+import com.bashpile.exceptions.BashpileUncheckedException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BashpileDaemonTest {
+
+    @Test @Timeout(20)
+    void daemonTranspilesRequest(@TempDir final Path tempDir) throws Exception {
+        final Path socketPath = tempDir.resolve("bashpile.sock");
+        final Path outputFile = tempDir.resolve("testrigData.bpt");
+        try (final BashpileDaemon daemon = BashpileDaemon.bind(socketPath)) {
+            final Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            server.start();
+
+            final List<String> response = send(socketPath, System.getProperty("user.dir"),
+                    List.of("--outputFile=" + outputFile, "src/test/resources/testrigData.bps"));
+
+            assertEquals("0", response.get(response.size() - 1), "Bad response: " + response);
+            assertEquals(outputFile.toString(), response.get(response.size() - 2));
+            assertTrue(Files.readString(outputFile).startsWith("#!/usr/bin/env bash"));
+
+            daemon.close();
+            server.join(10_000);
+            assertFalse(Files.exists(socketPath));
+        }
+    }
+
+    @Test @Timeout(20)
+    void daemonReportsFailedExitCode(@TempDir final Path tempDir) throws Exception {
+        final Path socketPath = tempDir.resolve("bashpile.sock");
+        try (final BashpileDaemon daemon = BashpileDaemon.bind(socketPath)) {
+            final Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            server.start();
+
+            final List<String> response = send(socketPath, tempDir.toString(), List.of());
+
+            assertEquals("1", response.get(response.size() - 1), "Bad response: " + response);
+            assertEquals("Input file must be specified.", response.get(0));
+        }
+    }
+
+    @Test @Timeout(20)
+    void daemonKeepsMultilineArguments(@TempDir final Path tempDir) throws Exception {
+        final Path socketPath = tempDir.resolve("bashpile.sock");
+        final Path input = Files.writeString(tempDir.resolve("two\nlines.bps"), "print(\"hi\")\n");
+        try (final BashpileDaemon daemon = BashpileDaemon.bind(socketPath)) {
+            final Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            server.start();
+
+            // a newline used to split the file name into two arguments
+            final List<String> response = send(socketPath, tempDir.toString(), List.of("two\nlines.bps"));
+
+            assertEquals("0", response.get(response.size() - 1), "Bad response: " + response);
+            assertTrue(Files.exists(tempDir.resolve(input.getFileName() + ".bpt")), "Bad response: " + response);
+        }
+    }
+
+    @Test @Timeout(20)
+    void daemonRejectsDaemonOptions(@TempDir final Path tempDir) throws Exception {
+        final Path socketPath = tempDir.resolve("bashpile.sock");
+        try (final BashpileDaemon daemon = BashpileDaemon.bind(socketPath)) {
+            final Thread server = new Thread(() -> {
+                try {
+                    daemon.serve();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            server.start();
+
+            final List<String> response = send(
+                    socketPath, tempDir.toString(), List.of("--socket=" + tempDir.resolve("other.sock"), "--daemon"));
+
+            assertEquals("2", response.get(response.size() - 1), "Bad response: " + response);
+            assertFalse(Files.exists(tempDir.resolve("other.sock")));
+        }
+    }
+
+    @Test
+    void socketDirectoryIsPrivate(@TempDir final Path tempDir) throws Exception {
+        final Path socketPath = tempDir.resolve("run").resolve("bashpile.sock");
+        try (final BashpileDaemon ignored = BashpileDaemon.bind(socketPath)) {
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socketPath.getParent())));
+        }
+
+        final Path shared = Files.createDirectory(tempDir.resolve("shared"));
+        Files.setPosixFilePermissions(shared, PosixFilePermissions.fromString("rwxrwxrwx"));
+        assertThrows(BashpileUncheckedException.class, () -> BashpileDaemon.bind(shared.resolve("bashpile.sock")));
+        assertFalse(Files.exists(shared.resolve("bashpile.sock")));
+    }
+
+    // helpers
+
+    /** Sends a request with the working directory and args, each ended by a NUL */
+    private static List<String> send(final Path socketPath, final String workingDirectory, final List<String> args)
+            throws IOException {
+        try (final SocketChannel client = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            final StringBuilder request = new StringBuilder(workingDirectory).append('\0')
+                    .append(args.size()).append('\0');
+            args.forEach(arg -> request.append(arg).append('\0'));
+            client.write(StandardCharsets.UTF_8.encode(request.toString()));
+            client.shutdownOutput();
+            final String response = new String(
+                    Channels.newInputStream(client).readAllBytes(), StandardCharsets.UTF_8);
+            return List.of(response.split("\n"));
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package com.bashpile;
+
+import com.bashpile.benchmarks.BenchmarkPrograms;
+import com.bashpile.engine.TranslationOptions;
+import com.bashpile.shell.BashShell;
+import com.bashpile.shell.ExecutionResults;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BashpileMainTest {
+
+    @Test
+    void batchTranslatesDirectory(@TempDir final Path tempDir) throws IOException {
+        final Path subDirectory = Files.createDirectories(tempDir.resolve("sub"));
+        for (int i = 0; i < 4; i++) {
+            Files.writeString(subDirectory.resolve("file%d.bps".formatted(i)), BenchmarkPrograms.generate(i + 1));
+        }
+        final Path single = Files.writeString(tempDir.resolve("single.bps"), "print(\"single\")\n");
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--jobs=3", subDirectory.toString(), single.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(Files.exists(subDirectory.resolve("file%d.bps.bpt".formatted(i))));
+        }
+        assertTrue(Files.exists(tempDir.resolve("single.bps.bpt")));
+        final List<String> lines = out.toString().lines().toList();
+        assertEquals(6, lines.size(), out.toString());
+        assertEquals("Transpiled 5 of 5 files, 0 failed.", lines.get(5));
+    }
+
+    @Test
+    void batchReportsEachFailure(@TempDir final Path tempDir) throws IOException {
+        final Path good = Files.writeString(tempDir.resolve("good.bps"), "print(\"good\")\n");
+        final Path bad = Files.writeString(tempDir.resolve("bad.bps"), "x: int = \"not an int\"\n");
+        Files.writeString(tempDir.resolve("exists.bps"), "print(\"exists\")\n");
+        final Path exists = tempDir.resolve("exists.bps");
+        Files.writeString(tempDir.resolve("exists.bps.bpt"), "");
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, good.toString(), bad.toString(), exists.toString());
+
+        assertEquals(2, exitCode, out.toString());
+        final List<String> lines = out.toString().lines().toList();
+        assertEquals(good + ": " + good + ".bpt", lines.get(0));
+        assertTrue(lines.get(1).startsWith(bad + ": "), lines.get(1));
+        assertTrue(lines.get(2).endsWith("already exists.  Will not overwrite."), lines.get(2));
+        assertEquals("Transpiled 1 of 3 files, 2 failed.", lines.get(3));
+    }
+
+    @Test
+    void concurrentTranslationsMatchSequential() throws Exception {
+        final List<String> programs = List.of(
+                BenchmarkPrograms.generate(3), BenchmarkPrograms.generate(5), BenchmarkPrograms.generate(7));
+        final List<String> expected = programs.stream().map(BashpileMainTest::translate).toList();
+
+        final List<Thread> threads = new ArrayList<>();
+        final String[] actual = new String[programs.size() * 4];
+        for (int i = 0; i < actual.length; i++) {
+            final int index = i;
+            final Thread thread = new Thread(() -> actual[index] = translate(programs.get(index % programs.size())));
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals(expected.get(i % programs.size()), actual[i]);
+        }
+    }
+
+    @Test
+    void streamedOutputMatchesTranslation(@TempDir final Path tempDir) throws IOException {
+        final String program = BenchmarkPrograms.generate(4);
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), program);
+        final Path output = tempDir.resolve("program.bash");
+        Files.writeString(output, "old");
+        Files.setPosixFilePermissions(output, PosixFilePermissions.fromString("rwxr-x---"));
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--deterministic", "--outputFile=" + output, input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final String expected = AntlrUtils.parse(input.toString(),
+                IOUtils.toInputStream(program, StandardCharsets.UTF_8), TranslationOptions.DEFAULT.deterministic(true));
+        assertEquals("#!/usr/bin/env bash\n\n" + expected, Files.readString(output));
+        assertEquals("rwxr-x---", PosixFilePermissions.toString(Files.getPosixFilePermissions(output)));
+        try (final Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(2, files.count(), "temporary file left behind");
+        }
+    }
+
+    @Test
+    void symlinkedOutputFileStaysASymlink(@TempDir final Path tempDir) throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), "print(\"linked\")\n");
+        final Path target = Files.writeString(
+                Files.createDirectories(tempDir.resolve("target")).resolve("program.bash"), "old");
+        final Path link = Files.createSymbolicLink(tempDir.resolve("program.bash"), target);
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--outputFile=" + link, input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        assertTrue(Files.isSymbolicLink(link));
+        assertTrue(Files.readString(target).contains("linked"), Files.readString(target));
+        try (final Stream<Path> files = Files.list(target.getParent())) {
+            assertEquals(1, files.count(), "temporary file left behind");
+        }
+    }
+
+    @Test
+    void outputFileWithShellSyntaxIsShellchecked(@TempDir final Path tempDir) throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), "print(\"quoted\")\n");
+        final Path output = tempDir.resolve("it's $(touch injected).bash");
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--outputFile=" + output, input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        assertTrue(Files.readString(output).contains("quoted"));
+        assertFalse(Files.exists(Path.of("injected")));
+    }
+
+    @Test
+    void bcCoprocessSendsFloatCalculationsToOneBc(@TempDir final Path tempDir) throws Exception {
+        final Path pidFile = tempDir.resolve("bc.pid");
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), """
+                function half:float(x:float) ["noinline"]:
+                    return x * .5
+                function show:empty(x:float):
+                    print(x * .5)
+                    return
+                #(echo "${__bp_bc_PID}" > "%s")
+                print(half(3.0) + 1.5)
+                i: int = 1
+                i = 2
+                print(i + 2)
+                #(show 3.0 | cat)
+                """.formatted(pidFile));
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--bcCoprocess", input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final String bash = Files.readString(tempDir.resolve("program.bps.bpt"));
+        assertEquals(1, bash.lines().filter(line -> line.startsWith("coproc ")).count(), bash);
+        // the function is pure so its result is in a variable instead of a command substitution
+        assertTrue(bash.contains("__bp_functionReturn"), bash);
+        assertTrue(bash.contains("$((${i%%[!+-]*}10#${i#[-+]} + 2))"), bash);
+        final ExecutionResults results = BashShell.runAndJoin(bash);
+        assertEquals(0, results.exitCode(), results.stdout());
+        // the pipeline doesn't get the coprocess so show falls back to its own bc
+        assertEquals("3.0\n4\n1.5\n", results.stdout());
+        assertBcStopped(pidFile);
+    }
+
+    @Test
+    void bcCoprocessIsStoppedOnAnError(@TempDir final Path tempDir) throws Exception {
+        final Path pidFile = tempDir.resolve("bc.pid");
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), """
+                function fail:float():
+                    #(exit 3)
+                    return 1.0
+                #(echo "${__bp_bc_PID}" > "%s")
+                print(1.5 + fail())
+                print("not reached")
+                """.formatted(pidFile));
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--bcCoprocess", input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final ExecutionResults results = BashShell.runAndJoin(
+                Files.readString(tempDir.resolve("program.bps.bpt")));
+        assertEquals(3, results.exitCode(), results.stdout());
+        assertTrue(results.stdout().contains("Error (exit code 3)"), results.stdout());
+        assertFalse(results.stdout().contains("not reached"), results.stdout());
+        assertBcStopped(pidFile);
+    }
+
+    @Test
+    void bcCoprocessIsStillStoppedAfterACreatesStatement(@TempDir final Path tempDir) throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), """
+                #(echo "log" > %s) creates "%s":
+                    print(1.5 * 2)
+                """.formatted(tempDir.resolve("log.txt"), tempDir.resolve("log.txt")));
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--bcCoprocess", input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final List<String> lines = Files.readString(tempDir.resolve("program.bps.bpt")).lines()
+                .map(String::strip).toList();
+        // the EXIT trap of the creates statement is replaced by the one that stops bc, not just removed
+        final int untrap = lines.indexOf("trap - INT TERM");
+        assertTrue(untrap > 0, String.join("\n", lines));
+        assertEquals("trap 'kill \"${__bp_bc_PID:-}\" 2>/dev/null || true' EXIT", lines.get(untrap + 1));
+        assertFalse(lines.contains("trap - INT TERM EXIT"), String.join("\n", lines));
+    }
+
+    @Test
+    void bufferOutputKeepsPrintsInOrder(@TempDir final Path tempDir) throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), """
+                function greet:str(name:str):
+                    print("greeting")
+                    return "hello " + name
+                print("first")
+                print(greet("world"))
+                #(echo "from the shell")
+                block:
+                    print("in block")
+                print("last")
+                """);
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--bufferOutput", input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final String bash = Files.readString(tempDir.resolve("program.bps.bpt"));
+        assertTrue(bash.contains("__bp_print \"first\\n"), bash);
+        assertFalse(bash.contains("\"${__bp_output}\"\n"), bash);
+        final ExecutionResults results = BashShell.runAndJoin(bash);
+        assertEquals(0, results.exitCode(), results.stdout());
+        assertEquals("first\ngreeting\nhello world\nfrom the shell\nin block\nlast\n", results.stdout());
+    }
+
+    @Test
+    void bufferOutputIsWrittenOutPastTheLimit(@TempDir final Path tempDir) throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), """
+                long: str = $(head -c 40000 /dev/zero | tr -c a a)
+                print(long)
+                last: str = "last"
+                print(long)
+                print(last)
+                """);
+
+        final StringWriter out = new StringWriter();
+        final int exitCode = execute(out, "--bufferOutput", input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final String bash = Files.readString(tempDir.resolve("program.bps.bpt"));
+        assertEquals(2, bash.lines().filter(line -> line.startsWith("__bp_print \"${long}")).count(), bash);
+        final ExecutionResults results = BashShell.runAndJoin(bash);
+        assertEquals(0, results.exitCode(), results.stdout());
+        final String longLine = "a".repeat(40000) + "\n";
+        assertEquals(longLine + longLine + "last\n", results.stdout());
+    }
+
+    @Test
+    void statsPrintsJsonToStandardError(@TempDir final Path tempDir) throws IOException {
+        final Path input = Files.writeString(tempDir.resolve("program.bps"), BenchmarkPrograms.generate(2));
+
+        final StringWriter out = new StringWriter();
+        final StringWriter err = new StringWriter();
+        final int exitCode = execute(out, err, "--stats=json", input.toString());
+
+        assertEquals(0, exitCode, out.toString());
+        final JsonNode stats = new ObjectMapper().readTree(err.toString());
+        assertEquals(input.toString(), stats.get("file").asText());
+        for (final String count : List.of("tokens", "parseTreeNodes", "bashBytes", "bashLines", "peakHeapBytes")) {
+            assertTrue(stats.get(count).asLong() > 0, count);
+        }
+        for (final String stage : List.of("lexMillis", "parseMillis", "translateMillis", "shellcheckMillis")) {
+            assertTrue(stats.get(stage).asDouble() > 0, stage);
+        }
+        assertEquals(Files.size(tempDir.resolve("program.bps.bpt")), stats.get("bashBytes").asLong());
+        assertEquals(Files.readString(tempDir.resolve("program.bps.bpt")).lines().count(),
+                stats.get("bashLines").asLong());
+        assertFalse(out.toString().contains("{"), "stats went to standard out");
+    }
+
+    // helpers
+
+    /** Asserts that the bc coprocess with the PID in pidFile is gone.  The kill may still be in flight. */
+    private static void assertBcStopped(final Path pidFile) throws Exception {
+        final long pid = Long.parseLong(Files.readString(pidFile).trim());
+        final Optional<ProcessHandle> bc = ProcessHandle.of(pid);
+        if (bc.isPresent()) {
+            try {
+                bc.get().onExit().get(5, TimeUnit.SECONDS);
+            } catch (final TimeoutException e) {
+                fail("bc is still running");
+            }
+        }
+    }
+
+    private static int execute(final StringWriter out, final String... args) {
+        return execute(out, new StringWriter(), args);
+    }
+
+    private static int execute(final StringWriter out, final StringWriter err, final String... args) {
+        final BashpileMain bashpile = new BashpileMain();
+        final CommandLine argProcessor = new CommandLine(bashpile);
+        bashpile.setPicocliCommandLine(argProcessor);
+        argProcessor.setOut(new PrintWriter(out));
+        argProcessor.setErr(new PrintWriter(err));
+        return argProcessor.execute(args);
+    }
+
+    private static String translate(final String program) {
+        try {
+            return AntlrUtils.parse(program, IOUtils.toInputStream(program, StandardCharsets.UTF_8),
+                    TranslationOptions.DEFAULT.deterministic(true));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
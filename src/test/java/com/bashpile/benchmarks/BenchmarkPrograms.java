@@ -0,0 +1,39 @@
+package com.bashpile.benchmarks;
+
+import javax.annotation.Nonnull;
+
+/** Generates large, valid Bashpile programs to benchmark with */
+public class BenchmarkPrograms {
+
+    /** About ten lines of Bashpile with a function, expressions, a block and a shell string.  Names end in the index. */
+    private static final String CHUNK = """
+            function area%1$d: float (r: float, scale: int):
+                x%1$d: float = r * r * 3.14
+                return x%1$d * scale
+            total%1$d: float = area%1$d(2.5, %1$d) + (1 + 2) * 3
+            print(total%1$d)
+            block:
+                message%1$d: str = "chunk %1$d"
+                print(message%1$d)
+                #(echo chunk%1$d > /dev/null)
+            """;
+
+    /** The number of lines per chunk */
+    public static final int CHUNK_LINES = (int) CHUNK.lines().count();
+
+    /**
+     * Repeats a template with renamed functions and variables.
+     *
+     * @param chunks The number of copies, each is {@link #CHUNK_LINES} lines.
+     * @return The Bashpile program.
+     */
+    public static @Nonnull String generate(final int chunks) {
+        final StringBuilder program = new StringBuilder(CHUNK.length() * chunks + 10);
+        for (int i = 0; i < chunks; i++) {
+            program.append(CHUNK.formatted(i));
+        }
+        return program.toString();
+    }
+
+    private BenchmarkPrograms() {}
+}
@@ -0,0 +1,59 @@
+package com.bashpile.benchmarks;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.BashpileLexer;
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link AntlrUtils#parseProgram(CommonTokenStream)}, a two-stage parse that tries SLL prediction with
+ * bail-out first and reparses with LL on a failure, with a plain LL parse.  Lexing is done in the setup so only the
+ * parse is measured.  Rerun this when the grammar grows: a failed SLL parse is parsed again, so the two-stage parse
+ * loses once <code>--profileParser</code> shows ambiguities in ordinary programs.
+ * <br>
+ * Run with <code>mvn -Pbenchmarks -Dskip.surefire.tests=true -Dbenchmarks=ParserBenchmark verify</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+    /** Copies of {@link BenchmarkPrograms}' template, about ten lines each */
+    @Param({"10", "100", "1000"})
+    public int chunks;
+
+    private String program;
+
+    private CommonTokenStream tokens;
+
+    @Setup(Level.Trial)
+    public void generateProgram() {
+        program = BenchmarkPrograms.generate(chunks);
+    }
+
+    @Setup(Level.Invocation)
+    public void lex() {
+        tokens = new CommonTokenStream(new BashpileLexer(CharStreams.fromString(program)));
+        tokens.fill();
+    }
+
+    @Benchmark
+    public ParseTree sllThenLl() {
+        return AntlrUtils.parseProgram(tokens);
+    }
+
+    @Benchmark
+    public ParseTree llOnly() {
+        final BashpileParser parser = new BashpileParser(tokens);
+        parser.removeErrorListeners();
+        return parser.program();
+    }
+}
@@ -0,0 +1,188 @@
+package com.bashpile.benchmarks;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Generates valid Bashpile of a given {@link Shape}, to find stages that slow down more than the input grows.
+ * <br>
+ * The programs have every statement alternative of BashpileParser.g4 and every kind of expression.  They translate
+ * without errors but aren't meant to be run; the create statements write to /tmp.
+ */
+public class ProgramGenerator {
+
+    /** The kinds of top-level statements, generated in this order over and over */
+    private static final int STATEMENT_KINDS = 12;
+
+    /**
+     * Generates a program.  Names end in the index of the statement or function, so they are all unique.
+     *
+     * @param shape The size of each part of the program.
+     * @return The Bashpile program.
+     */
+    public static @Nonnull String generate(@Nonnull final Shape shape) {
+        return new ProgramGenerator(shape).generate();
+    }
+
+    @Nonnull
+    private final Shape shape;
+
+    @Nonnull
+    private final StringBuilder program = new StringBuilder();
+
+    private ProgramGenerator(@Nonnull final Shape shape) {
+        this.shape = shape;
+    }
+
+    private @Nonnull String generate() {
+        program.append("""
+                /**
+                 * Generated by ProgramGenerator with %s
+                 */
+                total: float = 0.0
+                """.formatted(shape));
+        // forward declared functions are declared at the end, after they are called
+        for (int i = 0; i < shape.forwardDeclarations(); i++) {
+            program.append("function fn%d: float (a: float, b: float)\n".formatted(i));
+        }
+        for (int i = shape.forwardDeclarations(); i < shape.functions(); i++) {
+            appendFunction(i);
+        }
+        for (int i = 0; i < shape.statements(); i++) {
+            appendStatement(i);
+        }
+        for (int i = 0; i < shape.forwardDeclarations(); i++) {
+            appendFunction(i);
+        }
+        return program.toString();
+    }
+
+    /** Appends one top-level statement, which may be a block of nested statements */
+    private void appendStatement(final int i) {
+        switch (i % STATEMENT_KINDS) {
+            case 0 -> program.append("x%d: float = %s\n".formatted(i, calculation(i)));
+            case 1 -> program.append("total = total + %s\n".formatted(calculation(i)));
+            case 2 -> program.append("print(\"statement %d\", total)\n".formatted(i));
+            case 3 -> program.append(shape.functions() > 0
+                    ? "total = total + fn%d(%d.5, -%d.25)\n".formatted(i % shape.functions(), i, i % 7)
+                    : "total = total + (%d)\n".formatted(i));
+            case 4 -> appendBlock(i, 1);
+            case 5 -> program.append("s%d: str = %s\n".formatted(i, inline(i, shape.inlineDepth())));
+            case 6 -> program.append("n%d: int = %s: int\n".formatted(i, inline(i, shape.inlineDepth())));
+            case 7 -> program.append("""
+                    #(printf "%%s" "created %1$d" > /tmp/bashpileGenerated%1$d) creates "/tmp/bashpileGenerated%1$d":
+                        contents%1$d: str = $(cat /tmp/bashpileGenerated%1$d)
+                        print(contents%1$d)
+                    """.formatted(i));
+            case 8 -> program.append("""
+                    log%1$d: str = #(
+                        printf "/tmp/bashpileGenerated%1$d" > /tmp/bashpileGenerated%1$d
+                        printf "/tmp/bashpileGenerated%1$d"
+                    ) creates log%1$d:
+                        #(cat "$log%1$d")
+                    """.formatted(i));
+            case 9 -> program.append("%s\n".formatted(shellString(i, shape.inlineDepth())));
+            case 10 -> program.append("b%d: bool = true\nprint()\n".formatted(i));
+            default -> program.append("// blank line\n\nunset%d: str\n".formatted(i));
+        }
+    }
+
+    /** Appends an anonymous block with blocks nested in it until {@link Shape#blockDepth()} */
+    private void appendBlock(final int i, final int depth) {
+        if (depth > shape.blockDepth()) {
+            return;
+        }
+        final String indent = "    ".repeat(depth - 1);
+        program.append(indent).append(depth % 2 == 0 ? "block:\n" : "block [\"level%d\"]:\n".formatted(depth));
+        program.append(indent).append("    b%d_%d: float = %s\n".formatted(i, depth, calculation(i + depth)));
+        program.append(indent).append("    total = total + b%d_%d\n".formatted(i, depth));
+        appendBlock(i, depth + 1);
+        program.append(indent).append("    print(b%d_%d)\n".formatted(i, depth));
+    }
+
+    private void appendFunction(final int i) {
+        program.append("""
+                function fn%1$d: float (a: float, b: float) ["generated" "fn%1$d"]:
+                    product%1$d: float = a * b
+                    return product%1$d + %2$s
+                """.formatted(i, calculation(i)));
+    }
+
+    /** A calculation of {@link Shape#calculationLength()} numbers, with every operator and parenthesis */
+    private @Nonnull String calculation(final int i) {
+        final StringBuilder ret = new StringBuilder("%d.5".formatted(i % 10));
+        final String[] operators = {" + ", " * ", " - ", " / "};
+        for (int j = 1; j < shape.calculationLength(); j++) {
+            ret.append(operators[j % operators.length]);
+            ret.append(j % 3 == 0 ? "(%d + %d)".formatted(j, i % 5 + 1) : Integer.toString(j + 1));
+        }
+        return ret.toString();
+    }
+
+    /** An inline with depth nested inlines, e.g. <code>$(echo $(echo 3))</code> */
+    private static @Nonnull String inline(final int i, final int depth) {
+        return depth <= 1 ? "$(echo %d)".formatted(i) : "$(echo %s)".formatted(inline(i, depth - 1));
+    }
+
+    /** A shell string with depth - 1 nested inlines */
+    private static @Nonnull String shellString(final int i, final int depth) {
+        return "#(echo %s > /dev/null)".formatted(depth <= 1 ? Integer.toString(i) : inline(i, depth - 1));
+    }
+
+    // nested types
+
+    /**
+     * The size of each part of a generated program.  Immutable.
+     *
+     * @param statements The number of top-level statements, not counting function declarations.
+     * @param blockDepth How deep the anonymous blocks are nested.
+     * @param functions The number of function declarations.
+     * @param forwardDeclarations How many of the functions are forward declared.  No more than functions.
+     * @param inlineDepth How deep the inlines are nested in inlines and shell strings.
+     * @param calculationLength The number of numbers in each calculation.
+     */
+    public record Shape(
+            int statements,
+            int blockDepth,
+            int functions,
+            int forwardDeclarations,
+            int inlineDepth,
+            int calculationLength) {
+
+        /** A few hundred lines */
+        public static final Shape DEFAULT = new Shape(100, 3, 10, 5, 3, 4);
+
+        public Shape {
+            if (forwardDeclarations > functions) {
+                throw new IllegalArgumentException("Can't forward declare more functions than are declared");
+            }
+        }
+
+        public @Nonnull Shape statements(final int count) {
+            return new Shape(count, blockDepth, functions, forwardDeclarations, inlineDepth, calculationLength);
+        }
+
+        public @Nonnull Shape blockDepth(final int depth) {
+            return new Shape(statements, depth, functions, forwardDeclarations, inlineDepth, calculationLength);
+        }
+
+        /** Also lowers the forward declarations if there are more of them than functions */
+        public @Nonnull Shape functions(final int count) {
+            return new Shape(statements, blockDepth, count, Math.min(forwardDeclarations, count), inlineDepth,
+                    calculationLength);
+        }
+
+        /** Also raises the functions if there are fewer of them than forward declarations */
+        public @Nonnull Shape forwardDeclarations(final int count) {
+            return new Shape(statements, blockDepth, Math.max(functions, count), count, inlineDepth,
+                    calculationLength);
+        }
+
+        public @Nonnull Shape inlineDepth(final int depth) {
+            return new Shape(statements, blockDepth, functions, forwardDeclarations, depth, calculationLength);
+        }
+
+        public @Nonnull Shape calculationLength(final int length) {
+            return new Shape(statements, blockDepth, functions, forwardDeclarations, inlineDepth, length);
+        }
+    }
+}
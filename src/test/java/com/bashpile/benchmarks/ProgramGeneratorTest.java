@@ -0,0 +1,68 @@
+package com.bashpile.benchmarks;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.BashpileCompiler;
+import com.bashpile.BashpileLexer;
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramGeneratorTest {
+
+    private static final BashpileCompiler COMPILER = BashpileCompiler.of(BashpileCompiler.Options.DEFAULT
+            .deterministic(true)
+            .shellcheck(false));
+
+    @Test
+    void generatesEveryStatement() {
+        final ParseTree tree = AntlrUtils.parseProgram(new CommonTokenStream(new BashpileLexer(
+                CharStreams.fromString(ProgramGenerator.generate(ProgramGenerator.Shape.DEFAULT)))));
+        final Set<Class<?>> found = new HashSet<>();
+        collectStatements(tree, found);
+
+        final Set<Class<?>> all = Arrays.stream(BashpileParser.class.getClasses())
+                .filter(BashpileParser.StatementContext.class::isAssignableFrom)
+                .filter(type -> type != BashpileParser.StatementContext.class)
+                .collect(Collectors.toSet());
+        assertEquals(all, found);
+    }
+
+    @Test
+    void generatesPrograms() {
+        final ProgramGenerator.Shape shape = ProgramGenerator.Shape.DEFAULT;
+        for (final ProgramGenerator.Shape generated : new ProgramGenerator.Shape[] {
+                shape,
+                shape.statements(1),
+                shape.blockDepth(10),
+                shape.functions(0),
+                shape.forwardDeclarations(20),
+                shape.inlineDepth(1),
+                shape.inlineDepth(8),
+                shape.calculationLength(1),
+                shape.calculationLength(30)}) {
+            final BashpileCompiler.CompileResult result =
+                    COMPILER.compile("generated", ProgramGenerator.generate(generated));
+            assertTrue(result.success(), generated + ": " + result.diagnostics());
+        }
+    }
+
+    // helpers
+
+    private static void collectStatements(final ParseTree tree, final Set<Class<?>> found) {
+        if (tree instanceof BashpileParser.StatementContext) {
+            found.add(tree.getClass());
+        }
+        for (int i = 0; i < tree.getChildCount(); i++) {
+            collectStatements(tree.getChild(i), found);
+        }
+    }
+}
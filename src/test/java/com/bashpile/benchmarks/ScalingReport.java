@@ -0,0 +1,129 @@
+package com.bashpile.benchmarks;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.BashpileLexer;
+import com.bashpile.engine.BashTranslationEngine;
+import com.bashpile.engine.BashpileVisitor;
+import com.bashpile.engine.TranslationOptions;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Translates {@link ProgramGenerator} programs at doubling sizes, one {@link Knob} at a time, and flags the stages
+ * whose time grows faster than the length of the program.  E.g. a stage that is quadratic in the number of
+ * statements has a growth exponent of about 2.
+ * <br>
+ * Run with <code>mvn -Pscaling -Dskip.surefire.tests=true verify</code>.
+ */
+public class ScalingReport {
+
+    /** How many times each knob's starting value is doubled */
+    private static final int DOUBLINGS = 4;
+
+    /** The fastest of this many runs is reported, to leave out garbage collections and the like */
+    private static final int RUNS = 5;
+
+    /** Stages that grow faster than the program length to this power are flagged */
+    private static final double SUPERLINEAR_EXPONENT = 1.3;
+
+    /** Stages that take less than this many milliseconds at the largest size are too noisy to flag */
+    private static final double MIN_FLAGGED_MILLIS = 5;
+
+    private static final String[] STAGES = {"lex", "parse", "translate"};
+
+    public static void main(final String[] args) {
+        // warm up the JIT on a program of every shape
+        for (int i = 0; i < 20; i++) {
+            time(ProgramGenerator.generate(ProgramGenerator.Shape.DEFAULT));
+        }
+
+        final List<String> flagged = new ArrayList<>();
+        for (final Knob knob : Knob.values()) {
+            System.out.printf("%n%s%n%10s %10s %10s %10s %12s%n",
+                    knob.name(), "value", "chars", "lex ms", "parse ms", "translate ms");
+            final List<Integer> lengths = new ArrayList<>();
+            final List<double[]> times = new ArrayList<>();
+            for (int value = knob.start, i = 0; i <= DOUBLINGS; value *= 2, i++) {
+                final String program =
+                        ProgramGenerator.generate(knob.shape.apply(ProgramGenerator.Shape.DEFAULT, value));
+                final double[] millis = time(program);
+                lengths.add(program.length());
+                times.add(millis);
+                System.out.printf("%10d %10d %10.2f %10.2f %12.2f%n",
+                        value, program.length(), millis[0], millis[1], millis[2]);
+            }
+
+            // the growth exponent is the slope on a log-log plot of time against length
+            final StringBuilder exponents = new StringBuilder("growth exponent:");
+            final double lengthRatio = Math.log((double) lengths.get(DOUBLINGS) / lengths.get(0));
+            for (int stage = 0; stage < STAGES.length; stage++) {
+                final double first = times.get(0)[stage];
+                final double last = times.get(DOUBLINGS)[stage];
+                final double exponent = Math.log(last / first) / lengthRatio;
+                exponents.append(" %s %.2f".formatted(STAGES[stage], exponent));
+                if (exponent > SUPERLINEAR_EXPONENT && last >= MIN_FLAGGED_MILLIS) {
+                    exponents.append(" SUPER-LINEAR");
+                    flagged.add("%s %s (%.2f)".formatted(knob.name(), STAGES[stage], exponent));
+                }
+            }
+            System.out.println(exponents);
+        }
+
+        System.out.println();
+        System.out.println(flagged.isEmpty()
+                ? "No stage grows super-linearly."
+                : "Super-linear stages: " + String.join(", ", flagged));
+    }
+
+    // helpers
+
+    /** The fastest times of the stages, in milliseconds */
+    private static double[] time(@Nonnull final String program) {
+        final double[] ret = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        for (int run = 0; run < RUNS; run++) {
+            final long start = System.nanoTime();
+            final CommonTokenStream tokens =
+                    new CommonTokenStream(new BashpileLexer(CharStreams.fromString(program)));
+            tokens.fill();
+            final long lexed = System.nanoTime();
+            final ParseTree tree = AntlrUtils.parseProgram(tokens);
+            final long parsed = System.nanoTime();
+            new BashpileVisitor(new BashTranslationEngine("generated", TranslationOptions.DEFAULT.deterministic(true)))
+                    .visit(tree)
+                    .body();
+            final long translated = System.nanoTime();
+            ret[0] = Math.min(ret[0], (lexed - start) / 1_000_000.0);
+            ret[1] = Math.min(ret[1], (parsed - lexed) / 1_000_000.0);
+            ret[2] = Math.min(ret[2], (translated - parsed) / 1_000_000.0);
+        }
+        return ret;
+    }
+
+    // nested types
+
+    /** The parts of a program that are grown, each from the default shape */
+    private enum Knob {
+        STATEMENTS(250, ProgramGenerator.Shape::statements),
+        BLOCK_DEPTH(4, ProgramGenerator.Shape::blockDepth),
+        FUNCTIONS(50, ProgramGenerator.Shape::functions),
+        FORWARD_DECLARATIONS(50, ProgramGenerator.Shape::forwardDeclarations),
+        INLINE_DEPTH(2, ProgramGenerator.Shape::inlineDepth),
+        CALCULATION_LENGTH(8, ProgramGenerator.Shape::calculationLength);
+
+        private final int start;
+
+        @Nonnull
+        private final BiFunction<ProgramGenerator.Shape, Integer, ProgramGenerator.Shape> shape;
+
+        Knob(final int start, @Nonnull final BiFunction<ProgramGenerator.Shape, Integer, ProgramGenerator.Shape> shape) {
+            this.start = start;
+            this.shape = shape;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.bashpile.benchmarks;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.BashpileLexer;
+import com.bashpile.BashpileMain;
+import com.bashpile.engine.BashTranslationEngine;
+import com.bashpile.engine.BashpileVisitor;
+import com.bashpile.engine.TranslationOptions;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.openjdk.jmh.annotations.*;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times each stage of a translation on its own: the lexer, the parser, the translation of a parse tree, and all of
+ * {@link BashpileMain#transpile()} without ShellCheck.  Each stage's input is made in a setup, so only the stage is
+ * measured.
+ * <br>
+ * Run with <code>mvn -Pbenchmarks -Dskip.surefire.tests=true -Dbenchmarks=StageBenchmark verify</code>.
+ * The results are written as JSON to target/jmh-result.json, or to <code>-Dbenchmarks.result</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class StageBenchmark {
+
+    /** Copies of {@link BenchmarkPrograms}' template, about ten lines each */
+    @Param({"10", "100", "1000"})
+    public int chunks;
+
+    private String program;
+
+    private Path programFile;
+
+    @Setup(Level.Trial)
+    public void generateProgram() throws IOException {
+        program = BenchmarkPrograms.generate(chunks);
+        programFile = Files.createTempFile("stageBenchmark", ".bps");
+        Files.writeString(programFile, program);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProgram() throws IOException {
+        Files.deleteIfExists(programFile);
+    }
+
+    /** Reports the tokens lexed per second as well as the lexes per second */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public CommonTokenStream lexer(final TokenCounter counter) {
+        final CommonTokenStream ret = lex();
+        counter.tokens += ret.size();
+        return ret;
+    }
+
+    @Benchmark
+    public ParseTree parse(final Lexed lexed) {
+        return AntlrUtils.parseProgram(lexed.tokens);
+    }
+
+    @Benchmark
+    public String translate(final Parsed parsed) {
+        return new BashpileVisitor(new BashTranslationEngine(
+                "benchmark", TranslationOptions.DEFAULT.deterministic(true))).visit(parsed.tree).body();
+    }
+
+    /** Reads the file, lexes, parses and translates, like the command line */
+    @Benchmark
+    public String transpile() throws IOException {
+        final BashpileMain bashpile = new BashpileMain();
+        new CommandLine(bashpile).parseArgs("--deterministic", "--noShellcheck", programFile.toString());
+        return bashpile.transpile();
+    }
+
+    // helpers
+
+    private CommonTokenStream lex() {
+        final CommonTokenStream ret = new CommonTokenStream(new BashpileLexer(CharStreams.fromString(program)));
+        ret.fill();
+        return ret;
+    }
+
+    // nested types
+
+    /** A fresh token stream of the program for each parse */
+    @State(Scope.Thread)
+    public static class Lexed {
+
+        private CommonTokenStream tokens;
+
+        @Setup(Level.Invocation)
+        public void lex(final StageBenchmark benchmark) {
+            tokens = benchmark.lex();
+        }
+    }
+
+    /** A fresh parse tree of the program for each translation */
+    @State(Scope.Thread)
+    public static class Parsed {
+
+        private ParseTree tree;
+
+        @Setup(Level.Invocation)
+        public void parse(final StageBenchmark benchmark) {
+            tree = AntlrUtils.parseProgram(benchmark.lex());
+        }
+    }
+
+    /** Counts the lexed tokens, which JMH reports as a rate */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class TokenCounter {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+}
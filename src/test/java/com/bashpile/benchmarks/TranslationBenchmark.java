@@ -0,0 +1,56 @@
+package com.bashpile.benchmarks;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.engine.Translation;
+import com.bashpile.engine.TranslationOptions;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shows that adding up {@link Translation}s, and translating whole programs, scales linearly with the number of lines.
+ * Compare the time per line across the sizes.
+ * <br>
+ * Run with <code>mvn -Pbenchmarks -Dskip.surefire.tests=true -Dbenchmarks=TranslationBenchmark verify</code>.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TranslationBenchmark {
+
+    @Param({"10000", "30000", "100000"})
+    public int lines;
+
+    private List<Translation> lineTranslations;
+
+    private String program;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        lineTranslations = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            lineTranslations.add(Translation.toLineTranslation("echo \"line %d\"\n".formatted(i)));
+        }
+        program = BenchmarkPrograms.generate(lines / BenchmarkPrograms.CHUNK_LINES);
+    }
+
+    /** How visitProgram adds up the top-level statements */
+    @Benchmark
+    public String addTranslations() {
+        return lineTranslations.stream().reduce(Translation::add).orElseThrow().body();
+    }
+
+    @Benchmark
+    public String translateProgram() throws IOException {
+        return AntlrUtils.parse("benchmark", IOUtils.toInputStream(program, StandardCharsets.UTF_8),
+                TranslationOptions.DEFAULT.deterministic(true));
+    }
+}
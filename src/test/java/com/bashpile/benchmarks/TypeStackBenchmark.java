@@ -0,0 +1,75 @@
+package com.bashpile.benchmarks;
+
+import com.bashpile.engine.strongtypes.FunctionTypeInfo;
+import com.bashpile.engine.strongtypes.Type;
+import com.bashpile.engine.strongtypes.TypeStack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up variables and functions in a {@link TypeStack} with a frame per nested block.  Each frame declares
+ * {@link #IDS_PER_FRAME} variables.  The lookups are of names from the bottom frame, the top frame and a miss.
+ * <br>
+ * Run with <code>mvn -Pbenchmarks -Dskip.surefire.tests=true -Dbenchmarks=TypeStackBenchmark verify</code>.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TypeStackBenchmark {
+
+    private static final int IDS_PER_FRAME = 10;
+
+    /** How many blocks deep the lookups are */
+    @Param({"1", "10", "100"})
+    public int depth;
+
+    private TypeStack typeStack;
+
+    private String bottomVariable;
+
+    private String topVariable;
+
+    private String function;
+
+    @Setup(Level.Trial)
+    public void fillStack() {
+        typeStack = new TypeStack();
+        typeStack.putFunctionTypes("f", new FunctionTypeInfo(List.of(Type.INT), Type.INT));
+        for (int frame = 0; frame < depth; frame++) {
+            if (frame > 0) {
+                // left open for the whole trial
+                typeStack.pushFrame();
+            }
+            for (int i = 0; i < IDS_PER_FRAME; i++) {
+                typeStack.putVariableType("v%d_%d".formatted(frame, i), Type.INT, frame);
+            }
+        }
+        // new Strings, as each lookup is of a name from a new token
+        bottomVariable = new String("v0_0");
+        topVariable = new String("v%d_0".formatted(depth - 1));
+        function = new String("f");
+    }
+
+    @Benchmark
+    public void lookups(final Blackhole blackhole) {
+        blackhole.consume(typeStack.getVariableType(bottomVariable));
+        blackhole.consume(typeStack.getVariableType(topVariable));
+        blackhole.consume(typeStack.containsVariable("missing"));
+        blackhole.consume(typeStack.getFunctionTypes(function));
+    }
+
+    /** Entering and leaving a block with a declaration, as a function body does */
+    @Benchmark
+    public Type pushDeclarePop() {
+        try (var ignored = typeStack.pushFrame()) {
+            typeStack.putVariableType("local", Type.STR, 0);
+            return typeStack.getVariableType("local");
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.bashpile.cache;
+
+import com.bashpile.shell.ExecutionResults;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShellcheckCacheTest {
+
+    @Test
+    void passingVerdictIsCached(@TempDir final Path tempDir) {
+        final AtomicInteger runs = new AtomicInteger();
+        final Function<String, ExecutionResults> shellcheck = bash -> {
+            runs.incrementAndGet();
+            return new ExecutionResults(bash, 0, "");
+        };
+        final ShellcheckCache cache = ShellcheckCache.of(tempDir);
+        assertEquals(0, cache.check("echo hi\n", "warning", shellcheck).exitCode());
+        assertEquals(0, cache.check("echo hi\n", "warning", shellcheck).exitCode());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void failingVerdictIsCached(@TempDir final Path tempDir) {
+        final AtomicInteger runs = new AtomicInteger();
+        final Function<String, ExecutionResults> shellcheck = bash -> {
+            runs.incrementAndGet();
+            return new ExecutionResults(bash, 1, "SC2086: Double quote to prevent globbing\nline two\n");
+        };
+        final ShellcheckCache cache = ShellcheckCache.of(tempDir);
+        cache.check("echo $x\n", "warning", shellcheck);
+        final ExecutionResults cached = cache.check("echo $x\n", "warning", shellcheck);
+        assertEquals(1, runs.get());
+        assertEquals(1, cached.exitCode());
+        assertEquals("SC2086: Double quote to prevent globbing\nline two\n", cached.stdout());
+    }
+
+    @Test
+    void failedRunIsNotCached(@TempDir final Path tempDir) {
+        final AtomicInteger runs = new AtomicInteger();
+        final Function<String, ExecutionResults> shellcheck = bash -> {
+            runs.incrementAndGet();
+            return new ExecutionResults(bash, runs.get() == 1 ? 137 : 0, "");
+        };
+        final ShellcheckCache cache = ShellcheckCache.of(tempDir);
+        assertEquals(137, cache.check("echo hi\n", "warning", shellcheck).exitCode());
+        assertEquals(0, cache.check("echo hi\n", "warning", shellcheck).exitCode());
+        assertEquals(0, cache.check("echo hi\n", "warning", shellcheck).exitCode());
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void severityAndScriptChangeKey(@TempDir final Path tempDir) {
+        final AtomicInteger runs = new AtomicInteger();
+        final Function<String, ExecutionResults> shellcheck = bash -> {
+            runs.incrementAndGet();
+            return new ExecutionResults(bash, 0, "");
+        };
+        final ShellcheckCache cache = ShellcheckCache.of(tempDir);
+        cache.check("echo hi\n", "warning", shellcheck);
+        cache.check("echo hi\n", "style", shellcheck);
+        cache.check("echo bye\n", "warning", shellcheck);
+        assertEquals(3, runs.get());
+    }
+}
@@ -0,0 +1,63 @@
+package com.bashpile.cache;
+
+import com.bashpile.BashpileMain;
+import com.bashpile.engine.TranslationOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranspileCacheTest {
+
+    private static final String SCRIPT = "src/test/resources/testrigData.bps";
+
+    @Test
+    void deterministicTranslationsAreByteIdentical() throws IOException {
+        final String first = transpile("--deterministic", SCRIPT);
+        final String second = transpile("--deterministic", SCRIPT);
+        assertEquals(first, second);
+        assertFalse(first.contains("timestamp"));
+    }
+
+    @Test
+    void cacheMissStoresTranslation(@TempDir final Path tempDir) throws IOException {
+        final String fresh = transpile("--deterministic", SCRIPT);
+        final String cached = transpile("--cache", "--cacheDirectory=" + tempDir, SCRIPT);
+        assertEquals(fresh, cached);
+        try (var entries = Files.list(tempDir.resolve("transpile"))) {
+            assertEquals(1, entries.count());
+        }
+    }
+
+    @Test
+    void cacheHitSkipsTranslation(@TempDir final Path tempDir) throws IOException {
+        final String key = TranspileCache.key(
+                SCRIPT, Files.readAllBytes(Path.of(SCRIPT)), TranslationOptions.DEFAULT.deterministic(true));
+        TranspileCache.of(tempDir).put(key, "cached bash");
+        assertEquals("cached bash", transpile("--cache", "--cacheDirectory=" + tempDir, SCRIPT));
+    }
+
+    @Test
+    void changedOptionsChangeKey() {
+        final byte[] source = "print()".getBytes();
+        assertNotEquals(
+                TranspileCache.key(SCRIPT, source, TranslationOptions.DEFAULT),
+                TranspileCache.key(SCRIPT, source, TranslationOptions.DEFAULT.deterministic(true)));
+        assertNotEquals(
+                TranspileCache.key(SCRIPT, source, TranslationOptions.DEFAULT),
+                TranspileCache.key("other.bps", source, TranslationOptions.DEFAULT));
+    }
+
+    // helpers
+
+    private static String transpile(final String... args) throws IOException {
+        final BashpileMain bashpile = new BashpileMain();
+        new CommandLine(bashpile).parseArgs(args);
+        return bashpile.transpile();
+    }
+}
@@ -0,0 +1,45 @@
+package com.bashpile.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConstantFoldingTest {
+
+    @Test
+    void integersFoldLikeBash() {
+        assertEquals(Optional.of("3"), ConstantFolding.fold("7", "/", "2", true, false));
+        assertEquals(Optional.of("-3"), ConstantFolding.fold("-7", "/", "2", true, false));
+        assertEquals(Optional.of("(-3)"), ConstantFolding.fold("(-7)", "/", "2", true, true));
+        assertEquals(Optional.of("64000"), ConstantFolding.fold("32000", "+", "32000", true, false));
+    }
+
+    @Test
+    void decimalsFoldLikeBc() {
+        assertEquals(Optional.of("9.42"), ConstantFolding.fold("3.14", "*", "3", false, false));
+        assertEquals(Optional.of("21.0"), ConstantFolding.fold("42.", "*", ".5", false, false));
+        assertEquals(Optional.of(".5"), ConstantFolding.fold("1.5", "-", "1", false, false));
+        assertEquals(Optional.of("-.5"), ConstantFolding.fold("1", "-", "1.5", false, false));
+        assertEquals(Optional.of("(-0.5)"), ConstantFolding.fold("1", "-", "1.5", false, true));
+        // the scale of a product is the larger scale of its operands
+        assertEquals(Optional.of(".01"), ConstantFolding.fold(".11", "*", ".11", false, false));
+        // division truncates with the default scale of 0
+        assertEquals(Optional.of("3"), ConstantFolding.fold("7.5", "/", "2", false, false));
+        assertEquals(Optional.of("0"), ConstantFolding.fold("0.5", "-", "0.5", false, false));
+    }
+
+    @Test
+    void runtimeFailuresAreNotFolded() {
+        assertTrue(ConstantFolding.fold("1", "/", "0", true, false).isEmpty());
+        assertTrue(ConstantFolding.fold("1.5", "/", "0.0", false, false).isEmpty());
+        assertTrue(ConstantFolding.fold("9223372036854775807", "+", "1", true, false).isEmpty());
+    }
+
+    @Test
+    void nonLiteralsAreNotFolded() {
+        assertTrue(ConstantFolding.fold("${x}", "+", "1", true, false).isEmpty());
+        assertTrue(ConstantFolding.fold("1", "*", "$(bc <<< \"2 * 3\")", false, false).isEmpty());
+    }
+}
@@ -0,0 +1,71 @@
+package com.bashpile.engine;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.BashpileLexer;
+import com.bashpile.BashpileParser;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FunctionDeclarationIndexTest {
+
+    private static final String PROGRAM = """
+            function circleArea: float (r: float)
+
+            function circleArea: float (r: float):
+                return 3.14 * r * r
+
+            block:
+                function nested: str (greeting: str, name: str):
+                    return greeting + name
+                print(nested("hi ", "there"))
+
+            function circleArea: float (radius: float):
+                return 3 * radius * radius
+            """;
+
+    @Test
+    void findsNestedDeclarationsByNameAndParameterNames() {
+        final FunctionDeclarationIndex index = FunctionDeclarationIndex.of(parse(PROGRAM));
+
+        assertEquals(List.of("circleArea", "nested", "circleArea"),
+                index.all().stream().map(decl -> decl.typedId().Id().getText()).toList());
+        final BashpileParser.FunctionDeclarationStatementContext nested =
+                index.find("nested", parseParamaters("(greeting: str, name: str)")).orElseThrow();
+        assertEquals(7, nested.start.getLine());
+        final BashpileParser.FunctionDeclarationStatementContext radius =
+                index.find("circleArea", parseParamaters("(radius: float)")).orElseThrow();
+        assertEquals(11, radius.start.getLine());
+        assertTrue(index.find("nested", parseParamaters("(name: str)")).isEmpty());
+        assertTrue(index.find("missing", parseParamaters("()")).isEmpty());
+    }
+
+    @Test
+    void firstDeclarationOfASignatureWins() {
+        final FunctionDeclarationIndex index = FunctionDeclarationIndex.of(parse("""
+                function f: int (x: int):
+                    return 1
+                function f: int (x: int):
+                    return 2
+                """));
+        assertEquals(1, index.all().size());
+        assertEquals(1, index.find("f", parseParamaters("(x: int)")).orElseThrow().start.getLine());
+    }
+
+    // helpers
+
+    private static ParserRuleContext parse(final String program) {
+        return (ParserRuleContext) AntlrUtils.parseProgram(
+                new CommonTokenStream(new BashpileLexer(CharStreams.fromString(program))));
+    }
+
+    private static BashpileParser.ParamatersContext parseParamaters(final String paramaters) {
+        return new BashpileParser(new CommonTokenStream(new BashpileLexer(CharStreams.fromString(paramaters))))
+                .paramaters();
+    }
+}
@@ -0,0 +1,81 @@
+package com.bashpile.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static com.bashpile.engine.BashTranslationEngine.TAB;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndentingWriterTest {
+
+    @Test
+    void indentsEachLine() throws IOException {
+        final StringWriter out = new StringWriter();
+        final IndentingWriter writer = new IndentingWriter(out);
+        writer.write("f () {\n");
+        writer.indent();
+        writer.write("echo one\necho two");
+        writer.outdent();
+        writer.write("}\n");
+        assertEquals("f () {\n    echo one\n    echo two\n}\n", out.toString());
+    }
+
+    @Test
+    void blankLinesMatchSplittingIntoLines() throws IOException {
+        for (final String statement : List.of("", "\n", "\n\n", "a", "a\n", "a\n\n", "\na\n", "a\n\nb\n", "a\n\n\n")) {
+            final StringWriter out = new StringWriter();
+            final IndentingWriter writer = new IndentingWriter(out);
+            writer.indent();
+            writer.write(statement);
+            writer.outdent();
+            assertEquals(indentEagerly(statement), out.toString(), "Statement: " + statement.replace("\n", "\\n"));
+        }
+    }
+
+    @Test
+    void nestedRopesMatchIndentingEachLevel() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            final Pair tree = randomTree(random, 5);
+            assertEquals(tree.eager(), tree.rope().toString());
+        }
+    }
+
+    // helpers
+
+    /** How AntlrUtils.visitBlock indented a statement before IndentingWriter */
+    private static String indentEagerly(final String statement) {
+        return Arrays.stream(statement.split("\n"))
+                .map(str -> "%s%s\n".formatted(TAB, str))
+                .collect(Collectors.joining());
+    }
+
+    /** A random tree of whole lines, concatenations and indents, with its text built by indenting eagerly */
+    private static Pair randomTree(final Random random, final int depth) {
+        final List<String> lines = List.of("", "\n", "echo a\n", "\n\n", "x\ny\n", "a\n\nb\n", "    c\n");
+        final int choice = depth == 0 ? 0 : random.nextInt(3);
+        return switch (choice) {
+            case 0 -> {
+                final String text = lines.get(random.nextInt(lines.size()));
+                yield new Pair(Rope.of(text), text);
+            }
+            case 1 -> {
+                final Pair left = randomTree(random, depth - 1);
+                final Pair right = randomTree(random, depth - 1);
+                yield new Pair(left.rope().concat(right.rope()), left.eager() + right.eager());
+            }
+            default -> {
+                final Pair inner = randomTree(random, depth - 1);
+                yield new Pair(inner.rope().indent(), indentEagerly(inner.eager()));
+            }
+        };
+    }
+
+    private record Pair(Rope rope, String eager) {}
+}
@@ -0,0 +1,45 @@
+package com.bashpile.engine;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RopeTest {
+
+    @Test
+    void concatKeepsOrder() {
+        final Rope rope = Rope.of("a").concat(Rope.of("b")).concat(Rope.of("c").concat(Rope.of("d")));
+        assertEquals("abcd", rope.toString());
+        assertEquals(4, rope.length());
+    }
+
+    @Test
+    void emptyRopesAreNotKept() {
+        final Rope a = Rope.of("a");
+        assertSame(a, a.concat(Rope.EMPTY));
+        assertSame(a, Rope.EMPTY.concat(a));
+        assertSame(Rope.EMPTY, Rope.of(""));
+    }
+
+    @Test
+    void deepRopeDoesNotOverflowStack() {
+        Rope rope = Rope.EMPTY;
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 500_000; i++) {
+            rope = rope.concat(Rope.of("line %d\n".formatted(i)));
+            expected.append("line %d\n".formatted(i));
+        }
+        assertEquals(expected.toString(), rope.toString());
+    }
+
+    @Test
+    void translationsStayEqual() {
+        final Translation first = Translation.toLineTranslation("echo one\n").addPreamble("pre\n");
+        final Translation second = Translation.toLineTranslation("echo two\n");
+        final Translation added = first.add(second);
+        assertEquals("pre\n", added.preamble());
+        assertEquals("echo one\necho two\n", added.body());
+        assertEquals("pre\necho one\necho two\n", added.mergePreamble().body());
+        assertEquals(new Translation("pre\n", "echo one\necho two\n", added.type(), added.typeMetadata()), added);
+    }
+}
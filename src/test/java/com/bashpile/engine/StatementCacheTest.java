@@ -0,0 +1,165 @@
+package com.bashpile.engine;
+
+import com.bashpile.AntlrUtils;
+import com.bashpile.exceptions.TypeError;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+
+    private static final String PROGRAM = """
+            function circleArea: float (r: float)
+
+            function twoCircleArea: float (r1: float, r2: float):
+                return circleArea(r1) + circleArea(r2)
+
+            function circleArea: float (r:float):
+                return 3.14 * r * r
+
+            block:
+                x: int = 5
+                print(x)
+            y: float = twoCircleArea(1, 2)
+            print(y)
+            """;
+
+    @Test
+    void unchangedProgramTranslatesTheSame() throws IOException {
+        final StatementCache cache = new StatementCache();
+        final String fresh = translate(PROGRAM, null);
+        assertEquals(fresh, translate(PROGRAM, cache));
+        assertEquals(fresh, translate(PROGRAM, cache));
+    }
+
+    @Test
+    void changedStatementsTranslateLikeAFreshTranslation() throws IOException {
+        final StatementCache cache = new StatementCache();
+        translate(PROGRAM, cache);
+
+        // same lines, new body
+        final String newBody = PROGRAM.replace("3.14 * r * r", "3.1415 * r * r");
+        assertEquals(translate(newBody, null), translate(newBody, cache));
+
+        // everything moves down a line, including the hoisted function
+        final String movedDown = "\n" + newBody;
+        assertEquals(translate(movedDown, null), translate(movedDown, cache));
+
+        // an anonymous block renumbers the later anonymous blocks
+        final String extraBlock = "block:\n    print(\"first\")\n" + movedDown;
+        assertEquals(translate(extraBlock, null), translate(extraBlock, cache));
+
+        // adjacent prints are translated together by the first
+        final String extraPrint = extraBlock + "print(\"last\")\n";
+        assertEquals(translate(extraPrint, null), translate(extraPrint, cache));
+        final String changedPrint = extraPrint.replace("print(\"last\")", "print(\"changed\")");
+        assertEquals(translate(changedPrint, null), translate(changedPrint, cache));
+        final String noPrintBefore = changedPrint.replace("print(y)", "z: float = y");
+        assertEquals(translate(noPrintBefore, null), translate(noPrintBefore, cache));
+    }
+
+    @Test
+    void movedStatementsAreReused() throws IOException {
+        final List<Map<StatementCache.Key, StatementCache.Entry>> generations = new ArrayList<>();
+        final StatementCache cache = new StatementCache() {
+            @Override
+            public void replaceAll(final Program program, final Map<Key, Entry> latest) {
+                generations.add(latest);
+                super.replaceAll(program, latest);
+            }
+        };
+        translate(PROGRAM, cache);
+
+        // a new first statement, a line and an anonymous block, moves all the others
+        final String extraBlock = "block:\n    print(\"first\")\n" + PROGRAM;
+        assertEquals(translate(extraBlock, null), translate(extraBlock, cache));
+        assertEquals(generations.get(0).size() + 1, generations.get(1).size());
+        // a reused statement keeps the type stack of the translation it came from
+        final Set<Object> typeStacks = generations.get(0).values().stream()
+                .map(entry -> entry.after().typeStack())
+                .collect(Collectors.toSet());
+        assertEquals(generations.get(0).size(), generations.get(1).values().stream()
+                .filter(entry -> typeStacks.contains(entry.after().typeStack()))
+                .count());
+    }
+
+    @Test
+    void movedCallsTranslateLikeAFreshTranslation() throws IOException {
+        final StatementCache cache = new StatementCache();
+        final String program = """
+                function triple: int (x: int):
+                    tripled: int = x * 3
+                    return tripled
+                function double: int (x: int):
+                    doubled: int = x * 2
+                    return doubled
+                function shout: str (text: str) ["noinline"]:
+                    return #(printf '%s!' "$text")
+                print(double(2))
+                print(shout("hi") + shout("there"))
+                print(double(3))
+                print(triple(4))
+                """;
+        translate(program, cache);
+
+        // the calls move, the inlined declarations don't
+        final String callsMoved = program.replace("print(double(2))", "\nprint(double(2))");
+        assertEquals(translate(callsMoved, null), translate(callsMoved, cache));
+        // double and its calls move together, after another inlined call
+        final String allMoved = callsMoved.replace("function double", "print(triple(1))\nfunction double");
+        assertEquals(translate(allMoved, null), translate(allMoved, cache));
+    }
+
+    @Test
+    void sourceLikeGeneratedTextTranslatesLikeAFreshTranslation() throws IOException {
+        final StatementCache cache = new StatementCache();
+        final String program = """
+                block:
+                    print("anon0 and __bp_inline0, Bashpile line 1")
+                x: float = 1.5 + 2.5
+                print(x)
+                """;
+        translate(program, cache);
+        final String movedDown = "block:\n    print(\"first\")\n" + program;
+        assertEquals(translate(movedDown, null), translate(movedDown, cache));
+    }
+
+    @Test
+    void changedAnalysesTranslateLikeAFreshTranslation() throws IOException {
+        final StatementCache cache = new StatementCache();
+        final String constant = "x: int = 5\nprint(x + 1)\n";
+        translate(constant, cache);
+        // x isn't a constant anymore, so it isn't propagated into the unchanged print
+        final String reassigned = constant + "x = 6\nprint(x)\n";
+        assertEquals(translate(reassigned, null), translate(reassigned, cache));
+        assertEquals(translate(constant, null), translate(constant, cache));
+    }
+
+    @Test
+    void changedTypesAreCheckedInUnchangedStatements() throws IOException {
+        final StatementCache cache = new StatementCache();
+        translate(PROGRAM, cache);
+        final String badReturnType = PROGRAM.replace(
+                "function twoCircleArea: float (r1: float, r2: float):",
+                "function twoCircleArea: str (r1: float, r2: float):");
+        assertThrows(TypeError.class, () -> translate(badReturnType, cache));
+        // the failed translation did not replace the cached statements
+        assertEquals(translate(PROGRAM, null), translate(PROGRAM, cache));
+    }
+
+    // helpers
+
+    private static String translate(final String program, final StatementCache cache) throws IOException {
+        return AntlrUtils.parse("test", IOUtils.toInputStream(program, StandardCharsets.UTF_8),
+                TranslationOptions.DEFAULT.deterministic(true), cache);
+    }
+}
@@ -1,14 +1,16 @@
 package com.bashpile.engine.strongtypes;
 
+import com.bashpile.engine.StateLog;
+import com.bashpile.exceptions.UserError;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Map;
 
 import static com.bashpile.engine.strongtypes.Type.*;
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class TypeStackTest {
 
@@ -75,4 +77,53 @@ class TypeStackTest {
         assertEquals(FunctionTypeInfo.EMPTY, fixture.getFunctionTypes("f3"));
         assertEquals(FLOAT, fixture.getFunctionTypes("f1").returnType());
     }
-}
\ No newline at end of file
+
+    @Test
+    void redeclaredVariableTest() {
+        fixture.putVariableType("var1", INT, 0);
+        assertThrows(UserError.class, () -> fixture.putVariableType("var1", STR, 3));
+        fixture.push();
+        fixture.putVariableType("var1", STR, 0);
+        assertEquals(STR, fixture.getVariableType("var1"));
+    }
+
+    @Test
+    void shadowedFunctionTest() {
+        fixture.putFunctionTypes("f1", new FunctionTypeInfo(List.of(), FLOAT));
+        fixture.push();
+        fixture.putFunctionTypes("f1", new FunctionTypeInfo(List.of(), INT));
+        fixture.putFunctionTypes("f1", new FunctionTypeInfo(List.of(), STR));
+        assertEquals(STR, fixture.getFunctionTypes("f1").returnType());
+        fixture.pop();
+        assertEquals(FLOAT, fixture.getFunctionTypes("f1").returnType());
+    }
+
+    @Test
+    void checkpointRestoresBottomFrameTest() {
+        fixture.putVariableType("var1", INT, 0);
+        fixture.putFunctionTypes("f", new FunctionTypeInfo(List.of(INT), STR));
+        final StateLog.Checkpoint<TypeStack.Put> checkpoint = fixture.checkpoint();
+        fixture.putVariableType("var2", BOOL, 0);
+        fixture.putFunctionTypes("f", new FunctionTypeInfo(List.of(), STR));
+
+        final TypeStack restored = new TypeStack();
+        restored.restore(checkpoint);
+        assertEquals(1, restored.snapshot().size());
+        assertEquals(Map.of("var1", INT), restored.snapshot().get(0).variables());
+        assertEquals(Map.of("f", new FunctionTypeInfo(List.of(INT), STR)), restored.snapshot().get(0).functions());
+        assertEquals(checkpoint.fingerprint(), restored.checkpoint().fingerprint());
+        assertNotEquals(checkpoint.fingerprint(), fixture.checkpoint().fingerprint());
+
+        // the restored stack goes on like the original did
+        restored.putVariableType("var2", BOOL, 0);
+        restored.putFunctionTypes("f", new FunctionTypeInfo(List.of(), STR));
+        assertEquals(fixture.snapshot(), restored.snapshot());
+        assertEquals(fixture.checkpoint().fingerprint(), restored.checkpoint().fingerprint());
+    }
+
+    @Test
+    void checkpointOutsideBottomFrameThrowsTest() {
+        fixture.push();
+        assertThrows(IllegalStateException.class, fixture::checkpoint);
+    }
+}
@@ -97,6 +97,56 @@ class ExpressionBashpileTest extends BashpileTest {
         assertEquals("21\n", results.stdout());
     }
 
+    @Test @Order(95)
+    public void intExpressionsUseBashArithmetic() {
+        final ExecutionResults results = runText("""
+                x: int = 7
+                print(x / 2)
+                print(10 + -7 / 2)
+                print((10 + x) * 2)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertFalse(results.stdin().contains("bc <<<"), results.stdin());
+        // truncated toward zero like bc, so -7 / 2 is -3
+        assertEquals(List.of("3", "7", "34"), results.stdoutLines());
+    }
+
+    @Test @Order(96)
+    public void constantExpressionsAreCalculatedAtCompileTime() {
+        final ExecutionResults results = runText("""
+                x: int = 7
+                y: float = 2.5
+                z: int = 1
+                z = 2
+                print(3.14 * (1 + 2))
+                print(y * x)
+                print(1 + 2 * 3)
+                print(z + x)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertFalse(results.stdin().contains("bc"), results.stdin());
+        assertFalse(results.stdin().contains("${x}"), results.stdin());
+        // z is reassigned so it is read at runtime, as a decimal
+        assertTrue(results.stdin().contains("10#${z#[-+]}"), results.stdin());
+        // precedence is kept, as if it were calculated at runtime
+        assertEquals(List.of("9.42", "17.5", "7", "9"), results.stdoutLines());
+    }
+
+    @Test @Order(96)
+    public void zeroPaddedIntsAreDecimal() {
+        final ExecutionResults results = runText("""
+                month: int = $(echo 08)
+                print(month + 1)
+                negative: int = $(echo -010)
+                print(2 - negative * 1)
+                print($(echo 010) + 1)
+                print(negative + month)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        // like bc, not octal
+        assertEquals(List.of("9", "12", "11", "-2"), results.stdoutLines());
+    }
+
     @Test @Order(100)
     public void floatExpressionsWork() {
         final ExecutionResults results = runText("""
@@ -175,7 +175,7 @@ class FunctionBashpileTest extends BashpileTest {
                 function twoCircleArea: float (r1: float, r2: float):
                     return circleArea(r1) + circleArea(r2)
                                 
-                function circleArea: float (r:float) ["helper"]:
+                function circleArea: float (r:float) ["helper" "noinline"]:
                     return 3.14 * r * r
                                 
                 print(twoCircleArea(1, -1))""");
@@ -261,4 +261,114 @@ class FunctionBashpileTest extends BashpileTest {
                     return r
                 print(circleArea(.5 + 0.5))"""));
     }
+
+    @Test
+    @Order(200)
+    public void pureFunctionCallsSkipTheSubshell() {
+        final ExecutionResults results = runText("""
+                function square: int(n: int) ["noinline"]:
+                    return n * n
+                function loudSquare: int(n: int):
+                    print("squaring")
+                    return n * n
+                x: int = square(3)
+                print(square(x) + square(2))
+                print(loudSquare(2))""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertFalse(results.stdin().contains("$(square"), results.stdin());
+        // printing is a side effect, so the print stays in the return value like before
+        assertTrue(results.stdin().contains("$(loudSquare"), results.stdin());
+        assertEquals(List.of("85", "squaring", "4"), results.stdoutLines());
+    }
+
+    @Test
+    @Order(210)
+    public void pureFunctionErrorsExit() {
+        final ExecutionResults results = runText("""
+                function failing: str():
+                    x: str = $(exit 3)
+                    return x
+                print(failing())""");
+        assertFalse(results.stdin().contains("$(failing"), results.stdin());
+        // the error trap runs in the caller's shell
+        assertTrue(results.stdout().contains("Error (exit code 3)"), results.stdout());
+    }
+
+    @Test
+    @Order(215)
+    public void functionsCalledByShellTextAreNotPure() {
+        final ExecutionResults results = runText("""
+                function square: int(n: int) ["noinline"]:
+                    return n * n
+                function cube: int(n: int) ["noinline"]:
+                    return n * n * n
+                #(echo "$(square 3)")
+                x: str = $(cube 2)
+                print(x)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        // the shell text reads the output, so the functions print their values like before
+        assertFalse(results.stdin().contains("__bp_return"), results.stdin());
+        assertEquals(List.of("9", "8"), results.stdoutLines());
+    }
+
+    @Test
+    @Order(220)
+    public void smallFunctionsAreInlined() {
+        final ExecutionResults results = runText("""
+                function square: int(n: int):
+                    return n * n
+                function sumOfSquares: int(a: int, n: int):
+                    sum: int = square(a) + square(n)
+                    return sum
+                function countdown: int(n: int):
+                    return countdown(n - 1)
+                function neverRun: int() ["noinline"]:
+                    return countdown(3)
+                n: int = 3
+                print(sumOfSquares(n, 4))
+                block:
+                    print(square(5))
+                #(if false; then neverRun; fi)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertFalse(results.stdin().contains("square \""), results.stdin());
+        assertFalse(results.stdin().contains("sumOfSquares \""), results.stdin());
+        // countdown is recursive, so it is called instead of inlined
+        assertTrue(results.stdin().contains("countdown \"3\""), results.stdin());
+        // the parameter n of square doesn't capture the n of the caller
+        assertTrue(results.stdin().contains("local __bp_inline"), results.stdin());
+        assertEquals(List.of("25", "25"), results.stdoutLines());
+    }
+
+    @Test
+    @Order(230)
+    public void uncalledFunctionsAreLeftOut() {
+        final ExecutionResults results = runText("""
+                function neverCalled: int(n: int) ["noinline"]:
+                    return n * 2
+                function calledByCommand: str():
+                    print("called")
+                    return "ignored"
+                function called: str() ["noinline"]:
+                    return "hello"
+                print(called())
+                #(calledByCommand)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertTrue(results.stdinLines().stream()
+                .filter(line -> !line.startsWith("#")).noneMatch(line -> line.contains("neverCalled")), results.stdin());
+        assertTrue(results.stdin().contains("calledByCommand ()"), results.stdin());
+        assertEquals(List.of("hello", "called", "ignored"), results.stdoutLines());
+    }
+
+    @Test
+    @Order(240)
+    public void uncalledFunctionsAreStillTypeChecked() {
+        assertThrows(TypeError.class, () -> runText("""
+                function neverCalled: int(n: int):
+                    return "not an int"
+                print("unreachable")"""));
+    }
 }
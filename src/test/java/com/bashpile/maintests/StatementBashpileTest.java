@@ -456,4 +456,74 @@ class StatementBashpileTest extends BashpileTest {
             }
         }
     }
+
+    @Test @Order(220)
+    public void deadStoresAreLeftOut() {
+        final ExecutionResults results = runText("""
+                unused: int = 42
+                unused = 43
+                used: str = "kept"
+                block:
+                    alsoUnused: float = 1.5
+                print(used)""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertTrue(results.stdinLines().stream()
+                .filter(line -> !line.startsWith("#")).noneMatch(line -> line.contains("unused")), results.stdin());
+        assertTrue(results.stdinLines().stream()
+                .filter(line -> !line.startsWith("#")).noneMatch(line -> line.contains("alsoUnused")), results.stdin());
+        // the block was only dead stores
+        assertTrue(results.stdinLines().stream()
+                .filter(line -> !line.startsWith("#")).noneMatch(line -> line.contains("anon0")), results.stdin());
+        assertEquals("kept\n", results.stdout());
+    }
+
+    @Test @Order(225)
+    public void deadStoresInBlocksLeaveNoEmptyLines() {
+        final ExecutionResults results = runText("""
+                block:
+                    alsoUnused: float = 1.5
+                    print("in block")
+                    stillUnused: int = 2""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        assertTrue(results.stdinLines().stream().noneMatch(line -> !line.isEmpty() && line.isBlank()),
+                results.stdin());
+        assertEquals("in block\n", results.stdout());
+    }
+
+    @Test @Order(230)
+    public void exportedVariablesAreKeptForCommands() {
+        final ExecutionResults results = runText("""
+                forChildren: str = "exported"
+                neverRead: int = 1
+                #(bash -c 'echo "$forChildren"')""");
+        assertSuccessfulExitCode(results);
+        assertTrue(results.stdin().contains("neverRead"), results.stdin());
+        assertEquals("exported\n", results.stdout());
+    }
+
+    @Test @Order(240)
+    public void deadStoresAreStillTypeChecked() {
+        assertThrows(TypeError.class, () -> runText("""
+                unused: int = "not an int"
+                print("unreachable")"""));
+    }
+
+    @Test @Order(250)
+    public void adjacentPrintsAreOnePrintf() {
+        final ExecutionResults results = runText("""
+                x: int = 2
+                print("one", x)
+                print()
+                print(x * 2)
+                print(#(echo "four"))
+                print("five")""");
+        assertCorrectFormatting(results);
+        assertSuccessfulExitCode(results);
+        // the Shell String may write, so it starts a new printf
+        assertEquals(2, results.stdinLines().stream()
+                .filter(line -> !line.startsWith("#")).filter(line -> line.contains("printf")).count(), results.stdin());
+        assertEquals("one\n2\n\n4\nfour\nfive\n", results.stdout());
+    }
 }
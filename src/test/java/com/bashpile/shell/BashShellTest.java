@@ -8,6 +8,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 
 import java.io.IOException;
+import java.util.List;
 
 import static com.bashpile.shell.BashShell.runAndJoin;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -62,4 +63,12 @@ class BashShellTest extends BashpileTest {
         final ExecutionResults executionResults = runAndJoin("shellcheck --help");
         assertSuccessfulExitCode(executionResults);
     }
-}
\ No newline at end of file
+
+    @Test @Order(70)
+    void runWithArgumentsPassesThemUnchanged() throws IOException {
+        final ExecutionResults executionResults =
+                runAndJoin(List.of("printf", "%s\\n", "it's", "$(echo injected)", "a  b"));
+        assertSuccessfulExitCode(executionResults);
+        assertEquals("it's\n$(echo injected)\na  b\n", executionResults.stdout());
+    }
+}